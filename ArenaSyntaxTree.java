@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+// Syntax tree stored as parallel primitive arrays indexed by UNID instead of Node objects.
+// Children form a singly linked list through firstChild/nextSibling, and the inner and
+// leaf sections keep their insertion order in int arrays so toXML matches SyntaxTree.
+class ArenaSyntaxTree implements SyntaxTreeBackend {
+    private static final int NONE = -1;
+    private static final byte LEAF = 1;
+    private static final byte LIVE = 2;
+
+    private final SymbolTable symbols;
+    private final List<Token> tokens;
+    private final int root;
+
+    private int[] symbol;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] lastChild;
+    private int[] nextSibling;
+    private int[] tokenIndex;
+    private byte[] flags;
+
+    private int[] innerOrder = new int[64];
+    private int innerCount;
+    private int[] leafOrder = new int[64];
+    private int leafCount;
+    private int removedCount;
+    private int removedTotal;
+
+    ArenaSyntaxTree(int rootId, int rootSymbol, SymbolTable symbols, List<Token> tokens) {
+        this.symbols = symbols;
+        this.tokens = tokens;
+        this.root = rootId;
+        int capacity = Math.max(64, rootId + 1);
+        symbol = new int[capacity];
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        lastChild = new int[capacity];
+        nextSibling = new int[capacity];
+        tokenIndex = new int[capacity];
+        flags = new byte[capacity];
+        add(rootId, NONE, rootSymbol, false, NONE);
+    }
+
+    private void ensureCapacity(int unid) {
+        if (unid < symbol.length) {
+            return;
+        }
+        int capacity = Math.max(symbol.length * 2, unid + 1);
+        symbol = Arrays.copyOf(symbol, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        lastChild = Arrays.copyOf(lastChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        tokenIndex = Arrays.copyOf(tokenIndex, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    private void add(int unid, int parentId, int symbolId, boolean leaf, int token) {
+        ensureCapacity(unid);
+        symbol[unid] = symbolId;
+        parent[unid] = parentId;
+        firstChild[unid] = NONE;
+        lastChild[unid] = NONE;
+        nextSibling[unid] = NONE;
+        tokenIndex[unid] = token;
+        flags[unid] = (byte) (LIVE | (leaf ? LEAF : 0));
+    }
+
+    @Override
+    public void addInnerNode(int unid, int parentId, int symbolId) {
+        add(unid, parentId, symbolId, false, NONE);
+        if (innerCount == innerOrder.length) {
+            innerOrder = Arrays.copyOf(innerOrder, innerCount * 2);
+        }
+        innerOrder[innerCount++] = unid;
+    }
+
+    @Override
+    public void addLeafNode(int unid, int parentId, int symbolId) {
+        addLeaf(unid, parentId, symbolId, NONE);
+    }
+
+    @Override
+    public void addTokenLeaf(int unid, int parentId, int token) {
+        addLeaf(unid, parentId, tokens.get(token).symbolId, token);
+    }
+
+    private void addLeaf(int unid, int parentId, int symbolId, int token) {
+        add(unid, parentId, symbolId, true, token);
+        if (leafCount == leafOrder.length) {
+            leafOrder = Arrays.copyOf(leafOrder, leafCount * 2);
+        }
+        leafOrder[leafCount++] = unid;
+    }
+
+    @Override
+    public void addChild(int parentId, int childId) {
+        if (firstChild[parentId] == NONE) {
+            firstChild[parentId] = childId;
+        } else {
+            nextSibling[lastChild[parentId]] = childId;
+        }
+        lastChild[parentId] = childId;
+        nextSibling[childId] = NONE;
+    }
+
+    private void removeChild(int parentId, int childId) {
+        int previous = NONE;
+        for (int child = firstChild[parentId]; child != NONE; previous = child, child = nextSibling[child]) {
+            if (child != childId) {
+                continue;
+            }
+            if (previous == NONE) {
+                firstChild[parentId] = nextSibling[child];
+            } else {
+                nextSibling[previous] = nextSibling[child];
+            }
+            if (lastChild[parentId] == child) {
+                lastChild[parentId] = previous;
+            }
+            nextSibling[child] = NONE;
+            return;
+        }
+    }
+
+    @Override
+    public void removeNode(int unid) {
+        // Remove the node from its parent's children list
+        if (parent[unid] != NONE && isLive(parent[unid])) {
+            removeChild(parent[unid], unid);
+        }
+
+        // Recursively remove all children; removing a child can unlink it from this list
+        int child = firstChild[unid];
+        while (child != NONE) {
+            int next = nextSibling[child];
+            removeNode(child);
+            child = next;
+        }
+
+        if (unid != root && isLive(unid)) {
+            flags[unid] &= ~LIVE;
+            removedCount++;
+            removedTotal++;
+            if (removedCount > (innerCount + leafCount) / 2) {
+                compact();
+            }
+        }
+    }
+
+    // Drop tombstones from the inner and leaf order arrays
+    private void compact() {
+        innerCount = compact(innerOrder, innerCount);
+        leafCount = compact(leafOrder, leafCount);
+        removedCount = 0;
+    }
+
+    private int compact(int[] order, int count) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (isLive(order[i])) {
+                order[kept++] = order[i];
+            }
+        }
+        return kept;
+    }
+
+    private boolean isLive(int unid) {
+        return unid >= 0 && unid < flags.length && (flags[unid] & LIVE) != 0;
+    }
+
+    @Override
+    public int removedNodes() {
+        return removedTotal;
+    }
+
+    @Override
+    public boolean isLeaf(int unid) {
+        return (flags[unid] & LEAF) != 0;
+    }
+
+    @Override
+    public String getLabel(int unid) {
+        return tokenIndex[unid] != NONE ? tokens.get(tokenIndex[unid]).word : symbols.name(symbol[unid]);
+    }
+
+    int getRoot() {
+        return root;
+    }
+
+    Cursor cursor() {
+        return new Cursor(root);
+    }
+
+    // Movable view over one node of the arena, it allocates nothing while walking
+    final class Cursor {
+        private int node;
+
+        private Cursor(int node) {
+            this.node = node;
+        }
+
+        int node() {
+            return node;
+        }
+
+        void moveTo(int unid) {
+            node = unid;
+        }
+
+        boolean toFirstChild() {
+            if (firstChild[node] == NONE) {
+                return false;
+            }
+            node = firstChild[node];
+            return true;
+        }
+
+        boolean toNextSibling() {
+            if (nextSibling[node] == NONE) {
+                return false;
+            }
+            node = nextSibling[node];
+            return true;
+        }
+
+        int parentId() {
+            return parent[node];
+        }
+
+        int symbolId() {
+            return symbol[node];
+        }
+
+        int tokenIndex() {
+            return tokenIndex[node];
+        }
+
+        boolean isLeaf() {
+            return ArenaSyntaxTree.this.isLeaf(node);
+        }
+
+        String label() {
+            return getLabel(node);
+        }
+    }
+
+    @Override
+    public void forEachNode(NodeVisitor visitor) throws IOException {
+        int[] children = new int[16];
+        children = visit(visitor, root, children);
+        for (int i = 0; i < innerCount; i++) {
+            if (isLive(innerOrder[i])) {
+                children = visit(visitor, innerOrder[i], children);
+            }
+        }
+        for (int i = 0; i < leafCount; i++) {
+            if (isLive(leafOrder[i])) {
+                children = visit(visitor, leafOrder[i], children);
+            }
+        }
+    }
+
+    private int[] visit(NodeVisitor visitor, int node, int[] children) throws IOException {
+        int count = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (count == children.length) {
+                children = Arrays.copyOf(children, count * 2);
+            }
+            children[count++] = child;
+        }
+        visitor.visit(node, parent[node], isLeaf(node), getLabel(node), children, count);
+        return children;
+    }
+
+    @Override
+    public void writeXML(Writer out) throws IOException {
+        XmlEmitter xml = new XmlEmitter(out);
+        xml.text("<SYNTREE>\n");
+        xml.text("<ROOT>\n");
+        xml.text("\t<UNID>").number(root).text("</UNID>\n");
+        xml.text("\t<SYMB>").text(getLabel(root)).text("</SYMB>\n");
+        writeChildren(xml, root);
+        xml.text("</ROOT>\n");
+
+        xml.text("<INNERNODES>\n");
+        for (int i = 0; i < innerCount; i++) {
+            int node = innerOrder[i];
+            if (!isLive(node)) {
+                continue;
+            }
+            xml.text("<IN>\n");
+            xml.text("\t<UNID>").number(node).text("</UNID>\n");
+            xml.text("\t<SYMB>").text(symbols.name(symbol[node])).text("</SYMB>\n");
+            writeChildren(xml, node);
+            xml.text("</IN>\n");
+        }
+        xml.text("</INNERNODES>\n");
+
+        xml.text("<LEAFNODES>\n");
+        for (int i = 0; i < leafCount; i++) {
+            int node = leafOrder[i];
+            if (!isLive(node)) {
+                continue;
+            }
+            xml.text("<LEAF>\n");
+            xml.text("\t<PARENT>").number(parent[node]).text("</PARENT>\n");
+            xml.text("\t<UNID>").number(node).text("</UNID>\n");
+            xml.text("\t<TERMINAL>\n").text(getLabel(node)).text("\n\t</TERMINAL>\n");
+            xml.text("</LEAF>\n");
+        }
+        xml.text("</LEAFNODES>\n");
+
+        xml.text("</SYNTREE>");
+    }
+
+    private void writeChildren(XmlEmitter xml, int node) throws IOException {
+        xml.text("\t<CHILDREN>\n");
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            xml.text("\t\t<ID>").number(child).text("</ID>\n");
+        }
+        xml.text("\t</CHILDREN>\n");
+    }
+}
@@ -0,0 +1,163 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Compiles many RecSPL files concurrently on a fork/join pool:
+//
+//   java BatchCompiler <directory|manifest> [--threads n] [--out dir] [--predictive] [--arena]
+//                      [--cache dir] [--cache-size bytes] [--report]
+//
+// A directory contributes every *.txt file in it. A manifest lists one source path per
+// line, relative to the manifest, blank lines and lines starting with # are skipped.
+// Each tree is written as <name>.syntaxtree.xml next to its source, or in --out.
+// With --cache, unchanged sources are served from a CompilationCache in that directory.
+// With --report, the CompileMetrics of each file go to <name>.report.json beside its tree.
+final class BatchCompiler {
+    private BatchCompiler() {
+    }
+
+    static List<String> listInputs(String source) throws IOException {
+        Path path = Paths.get(source);
+        List<String> inputs = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            File[] files = path.toFile().listFiles((dir, name) -> name.endsWith(".txt"));
+            if (files != null) {
+                Arrays.sort(files);
+                for (File file : files) {
+                    inputs.add(file.getPath());
+                }
+            }
+        } else {
+            Path base = path.toAbsolutePath().getParent();
+            for (String line : Files.readAllLines(path)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    inputs.add(base.resolve(line).toString());
+                }
+            }
+        }
+        return inputs;
+    }
+
+    static String outputFor(String inputFile, String outputDirectory) {
+        File input = new File(inputFile);
+        String name = input.getName();
+        int dot = name.lastIndexOf('.');
+        name = (dot > 0 ? name.substring(0, dot) : name) + ".syntaxtree.xml";
+        File directory = outputDirectory != null ? new File(outputDirectory) : input.getAbsoluteFile().getParentFile();
+        return new File(directory, name).getPath();
+    }
+
+    static String reportFor(String outputFile) {
+        String suffix = ".syntaxtree.xml";
+        String base = outputFile.endsWith(suffix) ? outputFile.substring(0, outputFile.length() - suffix.length()) : outputFile;
+        return base + ".report.json";
+    }
+
+    // Run every compilation on a pool of the given size and wait for all of them
+    static List<Compilation> compileAll(List<Compilation> compilations, int threads) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Callable<Compilation>> tasks = new ArrayList<>();
+            for (Compilation compilation : compilations) {
+                tasks.add(compilation::run);
+            }
+            for (Future<Compilation> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            // Compilation.run records its own errors, anything else is a bug
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return compilations;
+    }
+
+    static void printSummary(List<Compilation> compilations, long wallNanos) {
+        int failed = 0;
+        int cached = 0;
+        long tokens = 0;
+        long lex = 0;
+        long parse = 0;
+        long write = 0;
+        for (Compilation compilation : compilations) {
+            if (!compilation.succeeded()) {
+                failed++;
+                System.out.println("FAILED " + compilation.inputFile + ": " + compilation.error);
+            }
+            if (compilation.cached) {
+                cached++;
+            }
+            tokens += compilation.tokenCount;
+            lex += compilation.lexNanos;
+            parse += compilation.parseNanos;
+            write += compilation.writeNanos;
+        }
+        System.out.println("Compiled " + compilations.size() + " files: " + (compilations.size() - failed)
+            + " succeeded, " + failed + " failed, " + cached + " from cache, " + tokens + " tokens");
+        System.out.printf("Wall time %.1f ms; summed lex %.1f ms, parse %.1f ms, write %.1f ms%n",
+            wallNanos / 1e6, lex / 1e6, parse / 1e6, write / 1e6);
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java BatchCompiler <directory|manifest> [--threads n] [--out dir] [--predictive] [--arena]"
+                + " [--cache dir] [--cache-size bytes] [--report]");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        String outputDirectory = null;
+        boolean predictive = false;
+        boolean arena = false;
+        String cacheDirectory = null;
+        long cacheSize = 1L << 30;
+        boolean report = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--out": outputDirectory = args[++i]; break;
+                case "--predictive": predictive = true; break;
+                case "--arena": arena = true; break;
+                case "--cache": cacheDirectory = args[++i]; break;
+                case "--cache-size": cacheSize = Long.parseLong(args[++i]); break;
+                case "--report": report = true; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+        try {
+            if (outputDirectory != null) {
+                Files.createDirectories(Paths.get(outputDirectory));
+            }
+            CompilationCache cache = cacheDirectory != null ? new CompilationCache(Paths.get(cacheDirectory), cacheSize) : null;
+            List<Compilation> compilations = new ArrayList<>();
+            for (String input : listInputs(args[0])) {
+                compilations.add(new Compilation(input, outputFor(input, outputDirectory), predictive, arena, cache));
+            }
+            long start = System.nanoTime();
+            compileAll(compilations, threads);
+            printSummary(compilations, System.nanoTime() - start);
+            if (report) {
+                for (Compilation compilation : compilations) {
+                    compilation.metrics.writeJson(reportFor(compilation.outputFile));
+                }
+            }
+            if (cache != null) {
+                System.out.println(cache.stats());
+            }
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
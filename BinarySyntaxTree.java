@@ -0,0 +1,414 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary alternative to the SYNTREE XML file.
+//
+//   header     : int magic 'RSYN', short version, short flags, int node count,
+//                int inner node count, int leaf count, int dictionary size,
+//                int total child count, int index size (largest UNID + 1)
+//   dictionary : dictionary size + 1 int byte offsets, then the UTF-8 bytes of every
+//                distinct label, padded to a multiple of 4
+//   records    : RECORD_INTS ints per node: unid, parentId, label index, flags,
+//                position of the first child, child count
+//   children   : the child UNIDs of every node, contiguous per node
+//   index      : record number of every UNID, -1 for UNIDs that are not in the tree
+//
+// Record 0 is the root, followed by the inner nodes and then the leaves in SYNTREE
+// order, so converting back to XML reproduces the original file byte for byte. All
+// sections are int aligned, so the reader can map the file in fixed windows without
+// an int ever straddling two of them, and files larger than 2 GiB can be walked
+// without creating Node objects.
+final class BinarySyntaxTree implements Closeable {
+    static final int MAGIC = ('R' << 24) | ('S' << 16) | ('Y' << 8) | 'N';
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_INTS = 6;
+    static final int FLAG_LEAF = 1;
+
+    private static final int WINDOW_SHIFT = 30; // 1 GiB mapping windows
+    private static final long WINDOW_MASK = (1L << WINDOW_SHIFT) - 1;
+
+    // A tree whose nodes can be enumerated more than once, see SyntaxTreeBackend.forEachNode
+    interface NodeSource {
+        void forEachNode(SyntaxTreeBackend.NodeVisitor visitor) throws IOException;
+    }
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] windows;
+    private final int nodeCount;
+    private final int innerCount;
+    private final int leafCount;
+    private final int dictionarySize;
+    private final int childCount;
+    private final int indexSize;
+    private final long dictionaryOffsets;
+    private final long dictionaryBytes;
+    private final long records;
+    private final long children;
+    private final long index;
+    private final String[] labels; // decoded on first use
+
+    private BinarySyntaxTree(String fileName) throws IOException {
+        file = new RandomAccessFile(fileName, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            windows = new MappedByteBuffer[(int) ((size + WINDOW_MASK) >>> WINDOW_SHIFT)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = (long) i << WINDOW_SHIFT;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_MASK + 1, size - start));
+            }
+            if (size < HEADER_SIZE || getInt(0) != MAGIC) {
+                throw new IOException("Not a binary syntax tree: " + fileName);
+            }
+            short version = windows[0].getShort(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary syntax tree version " + version);
+            }
+            nodeCount = getInt(8);
+            innerCount = getInt(12);
+            leafCount = getInt(16);
+            dictionarySize = getInt(20);
+            childCount = getInt(24);
+            indexSize = getInt(28);
+            dictionaryOffsets = HEADER_SIZE;
+            dictionaryBytes = dictionaryOffsets + 4L * (dictionarySize + 1);
+            records = align(dictionaryBytes + getInt(dictionaryBytes - 4));
+            children = records + 4L * RECORD_INTS * nodeCount;
+            index = children + 4L * childCount;
+            if (nodeCount != 1 + innerCount + leafCount || index + 4L * indexSize != size) {
+                throw new IOException("Corrupt binary syntax tree: " + fileName);
+            }
+            labels = new String[dictionarySize];
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Corrupt binary syntax tree: " + fileName, e);
+        }
+    }
+
+    // Map a binary syntax tree file for reading
+    static BinarySyntaxTree open(String fileName) throws IOException {
+        return new BinarySyntaxTree(fileName);
+    }
+
+    private static long align(long offset) {
+        return (offset + 3) & ~3L;
+    }
+
+    private int getInt(long offset) {
+        return windows[(int) (offset >>> WINDOW_SHIFT)].getInt((int) (offset & WINDOW_MASK));
+    }
+
+    private byte getByte(long offset) {
+        return windows[(int) (offset >>> WINDOW_SHIFT)].get((int) (offset & WINDOW_MASK));
+    }
+
+    private int field(int record, int field) {
+        return getInt(records + 4L * ((long) record * RECORD_INTS + field));
+    }
+
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    int innerCount() {
+        return innerCount;
+    }
+
+    int leafCount() {
+        return leafCount;
+    }
+
+    // Record number of the root node
+    int root() {
+        return 0;
+    }
+
+    // Record number of a UNID, or -1 if the tree has no such node
+    int record(int unid) {
+        return unid >= 0 && unid < indexSize ? getInt(index + 4L * unid) : -1;
+    }
+
+    int unid(int record) {
+        return field(record, 0);
+    }
+
+    int parentId(int record) {
+        return field(record, 1);
+    }
+
+    int labelIndex(int record) {
+        return field(record, 2);
+    }
+
+    boolean isLeaf(int record) {
+        return (field(record, 3) & FLAG_LEAF) != 0;
+    }
+
+    int childCount(int record) {
+        return field(record, 5);
+    }
+
+    // UNID of the i-th child of a record
+    int child(int record, int i) {
+        return getInt(children + 4L * ((long) field(record, 4) + i));
+    }
+
+    String label(int record) {
+        int labelIndex = labelIndex(record);
+        String label = labels[labelIndex];
+        if (label == null) {
+            int start = getInt(dictionaryOffsets + 4L * labelIndex);
+            byte[] bytes = new byte[getInt(dictionaryOffsets + 4L * (labelIndex + 1)) - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = getByte(dictionaryBytes + start + i);
+            }
+            label = new String(bytes, StandardCharsets.UTF_8);
+            labels[labelIndex] = label;
+        }
+        return label;
+    }
+
+    // Writes the tree in the SYNTREE XML format
+    void writeXML(Writer out) throws IOException {
+        XmlEmitter xml = new XmlEmitter(out);
+        xml.text("<SYNTREE>\n");
+        xml.text("<ROOT>\n");
+        xml.text("\t<UNID>").number(unid(0)).text("</UNID>\n");
+        xml.text("\t<SYMB>").text(label(0)).text("</SYMB>\n");
+        writeChildren(xml, 0);
+        xml.text("</ROOT>\n");
+
+        xml.text("<INNERNODES>\n");
+        for (int record = 1; record <= innerCount; record++) {
+            xml.text("<IN>\n");
+            xml.text("\t<UNID>").number(unid(record)).text("</UNID>\n");
+            xml.text("\t<SYMB>").text(label(record)).text("</SYMB>\n");
+            writeChildren(xml, record);
+            xml.text("</IN>\n");
+        }
+        xml.text("</INNERNODES>\n");
+
+        xml.text("<LEAFNODES>\n");
+        for (int record = innerCount + 1; record < nodeCount; record++) {
+            xml.text("<LEAF>\n");
+            xml.text("\t<PARENT>").number(parentId(record)).text("</PARENT>\n");
+            xml.text("\t<UNID>").number(unid(record)).text("</UNID>\n");
+            xml.text("\t<TERMINAL>\n").text(label(record)).text("\n\t</TERMINAL>\n");
+            xml.text("</LEAF>\n");
+        }
+        xml.text("</LEAFNODES>\n");
+
+        xml.text("</SYNTREE>");
+    }
+
+    private void writeChildren(XmlEmitter xml, int record) throws IOException {
+        xml.text("\t<CHILDREN>\n");
+        for (int i = 0, count = childCount(record); i < count; i++) {
+            xml.text("\t\t<ID>").number(child(record, i)).text("</ID>\n");
+        }
+        xml.text("\t</CHILDREN>\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    // Write a tree in the binary format. The nodes are enumerated three times: once to
+    // build the dictionary and the UNID index, then for the records and for the children.
+    static void write(NodeSource tree, String fileName) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<byte[]> labelBytes = new ArrayList<>();
+        int[][] recordIndex = {new int[64]};
+        int[] counts = new int[4]; // nodes, inner nodes, leaves, children
+        int[] indexSize = new int[1];
+        tree.forEachNode((unid, parentId, leaf, label, childIds, childCount) -> {
+            if (!dictionary.containsKey(label)) {
+                dictionary.put(label, labelBytes.size());
+                labelBytes.add(label.getBytes(StandardCharsets.UTF_8));
+            }
+            if (unid >= recordIndex[0].length) {
+                recordIndex[0] = Arrays.copyOf(recordIndex[0], Math.max(recordIndex[0].length * 2, unid + 1));
+            }
+            recordIndex[0][unid] = counts[0] + 1; // 0 marks an unused UNID until the index is written
+            indexSize[0] = Math.max(indexSize[0], unid + 1);
+            if (counts[0] > 0) {
+                counts[leaf ? 2 : 1]++;
+            }
+            counts[0]++;
+            counts[3] += childCount;
+        });
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeInt(counts[0]);
+            out.writeInt(counts[1]);
+            out.writeInt(counts[2]);
+            out.writeInt(labelBytes.size());
+            out.writeInt(counts[3]);
+            out.writeInt(indexSize[0]);
+
+            int offset = 0;
+            for (byte[] bytes : labelBytes) {
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : labelBytes) {
+                out.write(bytes);
+            }
+            for (int padding = (int) (align(offset) - offset); padding > 0; padding--) {
+                out.writeByte(0);
+            }
+
+            int[] childPosition = new int[1];
+            tree.forEachNode((unid, parentId, leaf, label, childIds, childCount) -> {
+                out.writeInt(unid);
+                out.writeInt(parentId);
+                out.writeInt(dictionary.get(label));
+                out.writeInt(leaf ? FLAG_LEAF : 0);
+                out.writeInt(childPosition[0]);
+                out.writeInt(childCount);
+                childPosition[0] += childCount;
+            });
+            tree.forEachNode((unid, parentId, leaf, label, childIds, childCount) -> {
+                for (int i = 0; i < childCount; i++) {
+                    out.writeInt(childIds[i]);
+                }
+            });
+            for (int unid = 0; unid < indexSize[0]; unid++) {
+                out.writeInt(recordIndex[0][unid] - 1);
+            }
+        }
+    }
+
+    // Enumerates the nodes of a SYNTREE XML file. The file is read line by line in the
+    // layout SyntaxTreeBackend.writeXML produces, because terminals such as "<" are
+    // written unescaped and would stop a general XML parser. Inner nodes get the UNID of
+    // the node that lists them as a child as their parent, -1 if none has been seen yet.
+    static NodeSource xmlSource(String xmlFileName) {
+        return visitor -> {
+            try (BufferedReader reader = new BufferedReader(new FileReader(xmlFileName), 1 << 16)) {
+                int[] parents = new int[64];
+                Arrays.fill(parents, -1);
+                int[] childIds = new int[16];
+                int childCount = 0;
+                int unid = -1;
+                int parentId = -1;
+                String label = null;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String trimmed = line.trim();
+                    if (trimmed.equals("<ROOT>") || trimmed.equals("<IN>") || trimmed.equals("<LEAF>")) {
+                        childCount = 0;
+                        parentId = -1;
+                        label = null;
+                    } else if (trimmed.startsWith("<UNID>")) {
+                        unid = Integer.parseInt(elementText(trimmed, "UNID"));
+                    } else if (trimmed.startsWith("<PARENT>")) {
+                        parentId = Integer.parseInt(elementText(trimmed, "PARENT"));
+                    } else if (trimmed.startsWith("<SYMB>")) {
+                        label = elementText(trimmed, "SYMB");
+                    } else if (trimmed.startsWith("<ID>")) {
+                        if (childCount == childIds.length) {
+                            childIds = Arrays.copyOf(childIds, childCount * 2);
+                        }
+                        childIds[childCount++] = Integer.parseInt(elementText(trimmed, "ID"));
+                    } else if (trimmed.equals("<TERMINAL>")) {
+                        label = reader.readLine();
+                    } else if (trimmed.equals("</ROOT>") || trimmed.equals("</IN>") || trimmed.equals("</LEAF>")) {
+                        boolean leaf = trimmed.equals("</LEAF>");
+                        if (label == null) {
+                            throw new IOException("Malformed SYNTREE node " + unid + " in " + xmlFileName);
+                        }
+                        if (!leaf && unid < parents.length) {
+                            parentId = parents[unid];
+                        }
+                        for (int i = 0; i < childCount; i++) {
+                            int child = childIds[i];
+                            if (child >= parents.length) {
+                                int length = parents.length;
+                                parents = Arrays.copyOf(parents, Math.max(length * 2, child + 1));
+                                Arrays.fill(parents, length, parents.length, -1);
+                            }
+                            parents[child] = unid;
+                        }
+                        visitor.visit(unid, parentId, leaf, label, childIds, childCount);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed SYNTREE file: " + xmlFileName, e);
+            }
+        };
+    }
+
+    private static String elementText(String line, String tag) throws IOException {
+        String close = "</" + tag + ">";
+        if (!line.endsWith(close)) {
+            throw new IOException("Malformed SYNTREE element: " + line);
+        }
+        return line.substring(tag.length() + 2, line.length() - close.length());
+    }
+
+    // True if the file starts with the binary syntax tree magic number
+    static boolean isBinary(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    static void xmlToBinary(String xmlFileName, String binaryFileName) throws IOException {
+        write(xmlSource(xmlFileName), binaryFileName);
+    }
+
+    static void binaryToXml(String binaryFileName, String xmlFileName) throws IOException {
+        try (BinarySyntaxTree tree = open(binaryFileName);
+             Writer writer = new BufferedWriter(new FileWriter(xmlFileName), 1 << 16)) {
+            tree.writeXML(writer);
+        }
+    }
+
+    // Converts a syntax tree to the other format: java BinarySyntaxTree <input> <output>
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java BinarySyntaxTree <input> <output>");
+            return;
+        }
+        try {
+            if (isBinary(args[0])) {
+                binaryToXml(args[0], args[1]);
+                System.out.println("Binary syntax tree converted to XML: " + args[1]);
+            } else {
+                xmlToBinary(args[0], args[1]);
+                System.out.println("XML syntax tree converted to binary: " + args[1]);
+            }
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
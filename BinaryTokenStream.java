@@ -0,0 +1,105 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Compact binary alternative to the TOKENSTREAM XML file.
+//
+//   header : int magic 'RTOK', short version, short flags, int token count,
+//            int string pool size, int id of the first token
+//   pool   : per distinct lexeme a varint byte length followed by its UTF-8 bytes
+//   tokens : per token a varint token class code (see TokenDFA) and a varint pool index,
+//            plus a zigzag varint id delta when FLAG_EXPLICIT_IDS is set
+//
+// Without FLAG_EXPLICIT_IDS token ids are consecutive from the first id, which is
+// always the case for lexer output. RecSPLLexer.writeBinaryTokenStream writes this
+// format and RecSPLParser.readBinaryTokenStream reads it.
+final class BinaryTokenStream {
+    static final int MAGIC = ('R' << 24) | ('T' << 16) | ('O' << 8) | 'K';
+    static final short VERSION = 1;
+    static final short FLAG_EXPLICIT_IDS = 1;
+    static final int HEADER_SIZE = 20;
+
+    private BinaryTokenStream() {
+    }
+
+    static int classCode(String tokenClass) {
+        switch (tokenClass) {
+            case "V": return TokenDFA.VARIABLE;
+            case "F": return TokenDFA.FUNCTION;
+            case "T": return TokenDFA.TEXT;
+            case "N": return TokenDFA.NUMBER;
+            case "reserved_keyword": return TokenDFA.RESERVED_KEYWORD;
+            default: throw new IllegalArgumentException("Unknown token class: " + tokenClass);
+        }
+    }
+
+    static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // Reads a varint at the buffer's position and advances past it
+    static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint at offset " + buffer.position());
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // True if the file starts with the binary token stream magic number
+    static boolean isBinary(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    static void xmlToBinary(String xmlFileName, String binaryFileName) throws IOException {
+        RecSPLLexer.writeBinaryTokenStream(RecSPLParser.parseXMLFile(xmlFileName), binaryFileName);
+    }
+
+    static void binaryToXml(String binaryFileName, String xmlFileName) throws IOException {
+        List<Token> tokens = RecSPLParser.readBinaryTokenStream(binaryFileName);
+        RecSPLLexer.writeTokenStream(tokens, xmlFileName);
+    }
+
+    // Converts a token stream to the other format: java BinaryTokenStream <input> <output>
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java BinaryTokenStream <input> <output>");
+            return;
+        }
+        try {
+            if (isBinary(args[0])) {
+                binaryToXml(args[0], args[1]);
+                System.out.println("Binary token stream converted to XML: " + args[1]);
+            } else {
+                xmlToBinary(args[0], args[1]);
+                System.out.println("XML token stream converted to binary: " + args[1]);
+            }
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+// A RecSPL program compiled by BytecodeCompiler for BytecodeVM. The instructions are a
+// flat int array, each an opcode followed by its operands, for a stack machine with two
+// operand stacks: one of doubles for num values and conditions (0 is false, 1 is true)
+// and one of Strings for text values. Variables live in slots: a global slot in main, or
+// one of the FRAME_SIZE slots of a function frame, the three parameters followed by the
+// three local variables. Every frame has a static link to the frame of the function its
+// function is declared in, and variables of enclosing functions are reached by following
+// those links a known number of hops.
+final class Bytecode {
+    static final int FRAME_SIZE = 6;
+
+    // Opcodes, with their operands
+    static final int PUSH_NUM = 0;          // k: push numbers[k]
+    static final int PUSH_TEXT = 1;         // k: push texts[k]
+    static final int LOAD_GLOBAL_NUM = 2;   // slot
+    static final int LOAD_GLOBAL_TEXT = 3;  // slot
+    static final int STORE_GLOBAL_NUM = 4;  // slot
+    static final int STORE_GLOBAL_TEXT = 5; // slot
+    static final int LOAD_NUM = 6;          // slot of the current frame
+    static final int LOAD_TEXT = 7;         // slot
+    static final int STORE_NUM = 8;         // slot
+    static final int STORE_TEXT = 9;        // slot
+    static final int LOAD_OUTER_NUM = 10;   // hops slot: slot of the frame hops static links up
+    static final int LOAD_OUTER_TEXT = 11;  // hops slot
+    static final int STORE_OUTER_NUM = 12;  // hops slot
+    static final int STORE_OUTER_TEXT = 13; // hops slot
+    static final int ADD = 14;
+    static final int SUB = 15;
+    static final int MUL = 16;
+    static final int DIV = 17;
+    static final int SQRT = 18;
+    static final int GRT = 19;
+    static final int EQ_NUM = 20;
+    static final int EQ_TEXT = 21;          // pops two texts, pushes a num
+    static final int AND = 22;
+    static final int OR = 23;
+    static final int NOT = 24;
+    static final int JUMP = 25;             // target
+    static final int JUMP_FALSE = 26;       // target: pop a condition, jump if it is false
+    static final int CALL = 27;             // function hops: pop three num arguments into a new
+                                            // frame linked to the frame hops static links up
+    static final int RETURN_NUM = 28;       // pop the frame, the num on top is the result
+    static final int RETURN = 29;
+    static final int PRINT_NUM = 30;
+    static final int PRINT_TEXT = 31;
+    static final int INPUT = 32;            // push a num read from the input
+    static final int HALT = 33;
+
+    private static final String[] NAMES = {
+        "PUSH_NUM", "PUSH_TEXT", "LOAD_GLOBAL_NUM", "LOAD_GLOBAL_TEXT", "STORE_GLOBAL_NUM", "STORE_GLOBAL_TEXT",
+        "LOAD_NUM", "LOAD_TEXT", "STORE_NUM", "STORE_TEXT", "LOAD_OUTER_NUM", "LOAD_OUTER_TEXT",
+        "STORE_OUTER_NUM", "STORE_OUTER_TEXT", "ADD", "SUB", "MUL", "DIV", "SQRT", "GRT", "EQ_NUM", "EQ_TEXT",
+        "AND", "OR", "NOT", "JUMP", "JUMP_FALSE", "CALL", "RETURN_NUM", "RETURN", "PRINT_NUM", "PRINT_TEXT",
+        "INPUT", "HALT"
+    };
+    private static final int[] OPERANDS = {
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 2, 0, 0, 0, 0, 0, 0
+    };
+    // Change of the num and the text stack depth, CALL of a num function pushes one more
+    static final int[] NUM_EFFECT = {
+        1, 0, 1, 0, -1, 0, 1, 0, -1, 0, 1, 0, -1, 0, -1, -1, -1, -1, 0, -1, -1, 1, -1, -1, 0, 0, -1, -3, -1, 0, -1, 0, 1, 0
+    };
+    static final int[] TEXT_EFFECT = {
+        0, 1, 0, 1, 0, -1, 0, 1, 0, -1, 0, 1, 0, -1, 0, 0, 0, 0, 0, 0, 0, -2, 0, 0, 0, 0, 0, 0, 0, 0, 0, -1, 0, 0
+    };
+
+    final int[] code;
+    final double[] numbers;
+    final String[] texts;
+    // Code index of the first instruction of each function; main starts at 0
+    final int[] functionEntry;
+    final String[] functionNames;
+    final int globalCount;
+    // Deepest the operand stacks get within one function
+    final int maxNumStack;
+    final int maxTextStack;
+
+    Bytecode(int[] code, double[] numbers, String[] texts, int[] functionEntry, String[] functionNames,
+             int globalCount, int maxNumStack, int maxTextStack) {
+        this.code = code;
+        this.numbers = numbers;
+        this.texts = texts;
+        this.functionEntry = functionEntry;
+        this.functionNames = functionNames;
+        this.globalCount = globalCount;
+        this.maxNumStack = maxNumStack;
+        this.maxTextStack = maxTextStack;
+    }
+
+    static int length(int opcode) {
+        return 1 + OPERANDS[opcode];
+    }
+
+    // One instruction per line, with the function entries as labels
+    String disassemble() {
+        StringBuilder text = new StringBuilder("main:\n");
+        for (int pc = 0; pc < code.length; pc += length(code[pc])) {
+            for (int function = 0; function < functionEntry.length; function++) {
+                if (functionEntry[function] == pc) {
+                    text.append(functionNames[function]).append(":\n");
+                }
+            }
+            int opcode = code[pc];
+            text.append(String.format("%6d  %-17s", pc, NAMES[opcode]));
+            for (int i = 1; i <= OPERANDS[opcode]; i++) {
+                text.append(' ').append(code[pc + i]);
+            }
+            if (opcode == PUSH_NUM) {
+                text.append("  ; ").append(BytecodeVM.formatNumber(numbers[code[pc + 1]]));
+            } else if (opcode == PUSH_TEXT) {
+                text.append("  ; \"").append(texts[code[pc + 1]]).append('"');
+            } else if (opcode == CALL) {
+                text.append("  ; ").append(functionNames[code[pc + 1]]);
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,290 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Lowers an analyzed program tree into Bytecode. Main is compiled first and ends in HALT,
+// then every function in breadth-first order of nesting. Names are resolved through the
+// declarations SemanticAnalyzer attached to the tree and turned into slots and static
+// link hop counts here, so the VM never looks a name up. A num function that ends without
+// return gives 0.
+final class BytecodeCompiler extends ProgramWalker {
+    // Global or frame slot of every variable and index of every function, by declaration id
+    private final int[] slots;
+    private int globalCount;
+    private int functionCount;
+
+    private int[] code = new int[256];
+    private int length;
+    private final Map<Double, Integer> numberIndex = new HashMap<>();
+    private final Map<String, Integer> textIndex = new HashMap<>();
+    private double[] numbers = new double[16];
+    private String[] texts = new String[16];
+
+    // Static scope depth of the code being compiled, 0 for main
+    private int depth;
+    private int numStack;
+    private int textStack;
+    private int maxNumStack;
+    private int maxTextStack;
+
+    private BytecodeCompiler(SyntaxTree tree, List<SemanticAnalyzer.Declaration> declarations) {
+        super(tree);
+        this.slots = new int[declarations.size()];
+        Map<SemanticAnalyzer.Scope, Integer> frameSlots = new IdentityHashMap<>();
+        for (SemanticAnalyzer.Declaration declaration : declarations) {
+            if (declaration.kind == SemanticAnalyzer.FUNCTION) {
+                slots[declaration.id] = functionCount++;
+            } else if (declaration.scope.depth == 0) {
+                slots[declaration.id] = globalCount++;
+            } else {
+                // Parameters are declared before the local variables
+                slots[declaration.id] = frameSlots.merge(declaration.scope, 1, Integer::sum) - 1;
+            }
+        }
+    }
+
+    // Analyze and compile the program of a Node based syntax tree
+    static Bytecode compile(SyntaxTree tree) {
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(tree);
+        List<String> errors = analyzer.analyze();
+        if (!errors.isEmpty()) {
+            throw new RuntimeException(errors.get(0) + (errors.size() > 1 ? " (and " + (errors.size() - 1) + " more)" : ""));
+        }
+        return new BytecodeCompiler(tree, analyzer.declarations()).compile();
+    }
+
+    private Bytecode compile() {
+        int[] functionEntry = new int[functionCount];
+        String[] functionNames = new String[functionCount];
+        ArrayDeque<Node> pending = new ArrayDeque<>();
+
+        Node prog = program();
+        compileAlgo(child(prog, algoId));
+        emit(Bytecode.HALT);
+        enqueueFunctions(child(prog, functionsId), pending);
+        while (!pending.isEmpty()) {
+            Node decl = pending.poll();
+            Node header = child(decl, headerId);
+            SemanticAnalyzer.Declaration function = tree.declaration(child(header, fnameId).unid);
+            functionEntry[slots[function.id]] = length;
+            functionNames[slots[function.id]] = function.name;
+            depth = function.scope.depth + 1;
+            Node body = child(decl, bodyId);
+            compileAlgo(child(body, algoId));
+            if (function.type == SemanticAnalyzer.NUM) {
+                emit(Bytecode.PUSH_NUM, number(0));
+                emit(Bytecode.RETURN_NUM);
+            } else {
+                emit(Bytecode.RETURN);
+            }
+            enqueueFunctions(child(child(body, subfuncsId), functionsId), pending);
+        }
+        return new Bytecode(Arrays.copyOf(code, length), Arrays.copyOf(numbers, numberIndex.size()),
+            Arrays.copyOf(texts, textIndex.size()), functionEntry, functionNames, globalCount, maxNumStack, maxTextStack);
+    }
+
+    private void enqueueFunctions(Node functions, ArrayDeque<Node> pending) {
+        for (Node list = functions; list != null; list = child(list, functionsId)) {
+            Node decl = child(list, declId);
+            if (decl != null) {
+                pending.add(decl);
+            }
+        }
+    }
+
+    // Emitting
+
+    private void emit(int opcode, int... operands) {
+        if (length + 1 + operands.length > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        code[length++] = opcode;
+        for (int operand : operands) {
+            code[length++] = operand;
+        }
+        adjustStacks(Bytecode.NUM_EFFECT[opcode], Bytecode.TEXT_EFFECT[opcode]);
+    }
+
+    private void adjustStacks(int nums, int texts) {
+        numStack += nums;
+        textStack += texts;
+        maxNumStack = Math.max(maxNumStack, numStack);
+        maxTextStack = Math.max(maxTextStack, textStack);
+    }
+
+    private int number(double value) {
+        Integer index = numberIndex.get(value);
+        if (index == null) {
+            index = numberIndex.size();
+            numberIndex.put(value, index);
+            if (index == numbers.length) {
+                numbers = Arrays.copyOf(numbers, index * 2);
+            }
+            numbers[index] = value;
+        }
+        return index;
+    }
+
+    private int text(String value) {
+        Integer index = textIndex.get(value);
+        if (index == null) {
+            index = textIndex.size();
+            textIndex.put(value, index);
+            if (index == texts.length) {
+                texts = Arrays.copyOf(texts, index * 2);
+            }
+            texts[index] = value;
+        }
+        return index;
+    }
+
+    // Instructions
+
+    private void compileAlgo(Node algo) {
+        for (Node list = child(algo, instrucId); list != null; list = child(list, instrucId)) {
+            Node command = child(list, commandId);
+            if (command != null && !command.children.isEmpty()) {
+                compileCommand(command);
+            }
+        }
+    }
+
+    private void compileCommand(Node command) {
+        Node first = command.children.get(0);
+        if (first.isLeaf) {
+            if (first.symbolId == printId) {
+                int type = compileAtomic(child(command, atomicId));
+                emit(type == SemanticAnalyzer.TEXT ? Bytecode.PRINT_TEXT : Bytecode.PRINT_NUM);
+            } else if (first.symbolId == returnId) {
+                compileAtomic(child(command, atomicId));
+                emit(Bytecode.RETURN_NUM);
+            } else if (first.symbolId == haltId) {
+                emit(Bytecode.HALT);
+            }
+            return; // skip
+        }
+        Node statement = content(first);
+        if (statement.symbolId == assignId) {
+            Node term = child(statement, termId);
+            if (term != null) {
+                compileTerm(term);
+            } else {
+                emit(Bytecode.INPUT);
+            }
+            store(child(statement, vnameId));
+        } else if (statement.symbolId == callId) {
+            compileCall(statement);
+        } else if (statement.symbolId == branchId) {
+            compileOperand(firstChild(child(statement, condId)));
+            emit(Bytecode.JUMP_FALSE, 0);
+            int toElse = length - 1;
+            compileAlgo(child(statement, algoId, 0));
+            emit(Bytecode.JUMP, 0);
+            int toEnd = length - 1;
+            code[toElse] = length;
+            compileAlgo(child(statement, algoId, 1));
+            code[toEnd] = length;
+        }
+    }
+
+    // Expressions, each leaves its value on the stack of its type and returns the type
+
+    private int compileTerm(Node term) {
+        Node value = firstChild(term);
+        return value.symbolId == callId ? compileCall(value) : compileOperand(value);
+    }
+
+    private int compileCall(Node call) {
+        for (int i = 0; i < 3; i++) {
+            compileAtomic(child(call, atomicId, i));
+        }
+        SemanticAnalyzer.Declaration function = tree.declaration(child(call, fnameId).unid);
+        emit(Bytecode.CALL, slots[function.id], depth - function.scope.depth);
+        if (function.type == SemanticAnalyzer.NUM) {
+            adjustStacks(1, 0);
+        }
+        return function.type;
+    }
+
+    private int compileAtomic(Node atomic) {
+        Node name = child(atomic, vnameId);
+        if (name != null) {
+            return load(name);
+        }
+        Node value = leaf(child(atomic, constId));
+        if (value.symbolId == numberId) {
+            emit(Bytecode.PUSH_NUM, number(Double.parseDouble(value.token.word)));
+            return SemanticAnalyzer.NUM;
+        }
+        emit(Bytecode.PUSH_TEXT, text(unquote(value.token.word)));
+        return SemanticAnalyzer.TEXT;
+    }
+
+    // An ATOMIC, an ARG, or an OP, SIMPLE or COMPOSIT operation
+    private int compileOperand(Node operand) {
+        if (operand.symbolId == atomicId) {
+            return compileAtomic(operand);
+        }
+        if (operand.symbolId == argId) {
+            return compileOperand(firstChild(operand));
+        }
+        int operator = operator(operand).symbolId;
+        int type = compileOperand(operand(operand, 0));
+        if (operator == notId) {
+            emit(Bytecode.NOT);
+            return SemanticAnalyzer.BOOL;
+        }
+        if (operator == sqrtId) {
+            emit(Bytecode.SQRT);
+            return SemanticAnalyzer.NUM;
+        }
+        compileOperand(operand(operand, 1));
+        if (operator == eqId) {
+            emit(type == SemanticAnalyzer.TEXT ? Bytecode.EQ_TEXT : Bytecode.EQ_NUM);
+            return SemanticAnalyzer.BOOL;
+        }
+        if (operator == orId || operator == andId || operator == grtId) {
+            emit(operator == orId ? Bytecode.OR : operator == andId ? Bytecode.AND : Bytecode.GRT);
+            return SemanticAnalyzer.BOOL;
+        }
+        emit(operator == addId ? Bytecode.ADD : operator == subId ? Bytecode.SUB : operator == mulId ? Bytecode.MUL : Bytecode.DIV);
+        return SemanticAnalyzer.NUM;
+    }
+
+    // Variables
+
+    private int load(Node name) {
+        SemanticAnalyzer.Declaration variable = tree.declaration(name.unid);
+        boolean text = variable.type == SemanticAnalyzer.TEXT;
+        access(variable, text ? Bytecode.LOAD_GLOBAL_TEXT : Bytecode.LOAD_GLOBAL_NUM,
+            text ? Bytecode.LOAD_TEXT : Bytecode.LOAD_NUM, text ? Bytecode.LOAD_OUTER_TEXT : Bytecode.LOAD_OUTER_NUM);
+        return variable.type;
+    }
+
+    private void store(Node name) {
+        SemanticAnalyzer.Declaration variable = tree.declaration(name.unid);
+        boolean text = variable.type == SemanticAnalyzer.TEXT;
+        access(variable, text ? Bytecode.STORE_GLOBAL_TEXT : Bytecode.STORE_GLOBAL_NUM,
+            text ? Bytecode.STORE_TEXT : Bytecode.STORE_NUM, text ? Bytecode.STORE_OUTER_TEXT : Bytecode.STORE_OUTER_NUM);
+    }
+
+    private void access(SemanticAnalyzer.Declaration variable, int global, int local, int outer) {
+        int slot = slots[variable.id];
+        int hops = depth - variable.scope.depth;
+        if (variable.scope.depth == 0) {
+            emit(global, slot);
+        } else if (hops == 0) {
+            emit(local, slot);
+        } else {
+            emit(outer, hops, slot);
+        }
+    }
+
+    // Text constants keep their quotes in the token
+    static String unquote(String word) {
+        return word.length() >= 2 && word.startsWith("\"") && word.endsWith("\"") ? word.substring(1, word.length() - 1) : word;
+    }
+}
@@ -0,0 +1,254 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+// Runs Bytecode in a single dispatch loop. The program counter, the stack pointers and the
+// current frame are locals of run(); the operand stacks are sized from the compiled
+// maximum so pushes need no bounds checks; and the variable slots of all frames are two
+// flat arrays, num and text, indexed by frame * FRAME_SIZE + slot. A call only stores a
+// return address and a static link and copies three arguments, and frames are never
+// allocated as objects. Deep recursion grows the frame arrays, not the thread stack.
+final class BytecodeVM {
+    // Frames a runaway recursion may use before it is stopped
+    private static final int MAX_FRAMES = 1 << 22;
+
+    private final Bytecode program;
+
+    BytecodeVM(Bytecode program) {
+        this.program = program;
+    }
+
+    void run(DoubleSupplier input, PrintStream out) {
+        final int[] code = program.code;
+        final double[] numbers = program.numbers;
+        final String[] texts = program.texts;
+        final int[] entries = program.functionEntry;
+        final int frameSize = Bytecode.FRAME_SIZE;
+
+        double[] globalNums = new double[program.globalCount];
+        String[] globalTexts = new String[program.globalCount];
+        Arrays.fill(globalTexts, "");
+        double[] nums = new double[program.maxNumStack + 1];
+        String[] strs = new String[program.maxTextStack + 1];
+        int nsp = 0;
+        int tsp = 0;
+
+        int frameCapacity = 64;
+        double[] frameNums = new double[frameCapacity * frameSize];
+        String[] frameTexts = new String[frameCapacity * frameSize];
+        int[] returnTo = new int[frameCapacity];
+        int[] links = new int[frameCapacity];
+        int fp = -1; // main has no frame
+        int base = 0;
+        int pc = 0;
+
+        while (true) {
+            switch (code[pc]) {
+                case Bytecode.PUSH_NUM:
+                    nums[nsp++] = numbers[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case Bytecode.PUSH_TEXT:
+                    strs[tsp++] = texts[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case Bytecode.LOAD_GLOBAL_NUM:
+                    nums[nsp++] = globalNums[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case Bytecode.LOAD_GLOBAL_TEXT:
+                    strs[tsp++] = globalTexts[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case Bytecode.STORE_GLOBAL_NUM:
+                    globalNums[code[pc + 1]] = nums[--nsp];
+                    pc += 2;
+                    break;
+                case Bytecode.STORE_GLOBAL_TEXT:
+                    globalTexts[code[pc + 1]] = strs[--tsp];
+                    pc += 2;
+                    break;
+                case Bytecode.LOAD_NUM:
+                    nums[nsp++] = frameNums[base + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case Bytecode.LOAD_TEXT:
+                    strs[tsp++] = frameTexts[base + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case Bytecode.STORE_NUM:
+                    frameNums[base + code[pc + 1]] = nums[--nsp];
+                    pc += 2;
+                    break;
+                case Bytecode.STORE_TEXT:
+                    frameTexts[base + code[pc + 1]] = strs[--tsp];
+                    pc += 2;
+                    break;
+                case Bytecode.LOAD_OUTER_NUM:
+                    nums[nsp++] = frameNums[outer(links, fp, code[pc + 1]) * frameSize + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case Bytecode.LOAD_OUTER_TEXT:
+                    strs[tsp++] = frameTexts[outer(links, fp, code[pc + 1]) * frameSize + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case Bytecode.STORE_OUTER_NUM:
+                    frameNums[outer(links, fp, code[pc + 1]) * frameSize + code[pc + 2]] = nums[--nsp];
+                    pc += 3;
+                    break;
+                case Bytecode.STORE_OUTER_TEXT:
+                    frameTexts[outer(links, fp, code[pc + 1]) * frameSize + code[pc + 2]] = strs[--tsp];
+                    pc += 3;
+                    break;
+                case Bytecode.ADD:
+                    nsp--;
+                    nums[nsp - 1] += nums[nsp];
+                    pc++;
+                    break;
+                case Bytecode.SUB:
+                    nsp--;
+                    nums[nsp - 1] -= nums[nsp];
+                    pc++;
+                    break;
+                case Bytecode.MUL:
+                    nsp--;
+                    nums[nsp - 1] *= nums[nsp];
+                    pc++;
+                    break;
+                case Bytecode.DIV:
+                    nsp--;
+                    nums[nsp - 1] /= nums[nsp];
+                    pc++;
+                    break;
+                case Bytecode.SQRT:
+                    nums[nsp - 1] = Math.sqrt(nums[nsp - 1]);
+                    pc++;
+                    break;
+                case Bytecode.GRT:
+                    nsp--;
+                    nums[nsp - 1] = nums[nsp - 1] > nums[nsp] ? 1 : 0;
+                    pc++;
+                    break;
+                case Bytecode.EQ_NUM:
+                    nsp--;
+                    nums[nsp - 1] = nums[nsp - 1] == nums[nsp] ? 1 : 0;
+                    pc++;
+                    break;
+                case Bytecode.EQ_TEXT:
+                    tsp -= 2;
+                    nums[nsp++] = strs[tsp].equals(strs[tsp + 1]) ? 1 : 0;
+                    pc++;
+                    break;
+                case Bytecode.AND:
+                    nsp--;
+                    nums[nsp - 1] = nums[nsp - 1] != 0 && nums[nsp] != 0 ? 1 : 0;
+                    pc++;
+                    break;
+                case Bytecode.OR:
+                    nsp--;
+                    nums[nsp - 1] = nums[nsp - 1] != 0 || nums[nsp] != 0 ? 1 : 0;
+                    pc++;
+                    break;
+                case Bytecode.NOT:
+                    nums[nsp - 1] = nums[nsp - 1] == 0 ? 1 : 0;
+                    pc++;
+                    break;
+                case Bytecode.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case Bytecode.JUMP_FALSE:
+                    pc = nums[--nsp] == 0 ? code[pc + 1] : pc + 2;
+                    break;
+                case Bytecode.CALL: {
+                    int link = outer(links, fp, code[pc + 2]);
+                    if (++fp == frameCapacity) {
+                        if (frameCapacity == MAX_FRAMES) {
+                            throw new RuntimeException("Runtime error: call stack overflow in " + program.functionNames[code[pc + 1]]);
+                        }
+                        frameCapacity *= 2;
+                        frameNums = Arrays.copyOf(frameNums, frameCapacity * frameSize);
+                        frameTexts = Arrays.copyOf(frameTexts, frameCapacity * frameSize);
+                        returnTo = Arrays.copyOf(returnTo, frameCapacity);
+                        links = Arrays.copyOf(links, frameCapacity);
+                    }
+                    base = fp * frameSize;
+                    nsp -= 3;
+                    frameNums[base] = nums[nsp];
+                    frameNums[base + 1] = nums[nsp + 1];
+                    frameNums[base + 2] = nums[nsp + 2];
+                    frameNums[base + 3] = 0;
+                    frameNums[base + 4] = 0;
+                    frameNums[base + 5] = 0;
+                    for (int i = 0; i < frameSize; i++) {
+                        frameTexts[base + i] = "";
+                    }
+                    returnTo[fp] = pc + 3;
+                    links[fp] = link;
+                    pc = entries[code[pc + 1]];
+                    break;
+                }
+                case Bytecode.RETURN_NUM:
+                case Bytecode.RETURN:
+                    // A num result stays on top of the operand stack for the caller
+                    pc = returnTo[fp];
+                    fp--;
+                    base = fp * frameSize;
+                    break;
+                case Bytecode.PRINT_NUM:
+                    out.println(formatNumber(nums[--nsp]));
+                    pc++;
+                    break;
+                case Bytecode.PRINT_TEXT:
+                    out.println(strs[--tsp]);
+                    pc++;
+                    break;
+                case Bytecode.INPUT:
+                    nums[nsp++] = input.getAsDouble();
+                    pc++;
+                    break;
+                case Bytecode.HALT:
+                    return;
+                default:
+                    throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    // Frame reached from frame fp by following hops static links, -1 for main
+    private static int outer(int[] links, int fp, int hops) {
+        for (; hops > 0; hops--) {
+            fp = links[fp];
+        }
+        return fp;
+    }
+
+    // A num as RecSPL prints it: whole numbers without a fraction
+    static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    // Numbers for input, one per line
+    static DoubleSupplier lines(InputStream in) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return () -> {
+            try {
+                String line = reader.readLine();
+                if (line == null) {
+                    throw new RuntimeException("Runtime error: input ended");
+                }
+                return Double.parseDouble(line.trim());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+}
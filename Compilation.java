@@ -0,0 +1,127 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+// One source file taken through lexing, parsing and writing its syntax tree. Every
+// compilation has its own lexer scan and RecSPLParser, so any number can run at once.
+final class Compilation {
+    final String inputFile;
+    final String outputFile;
+    private final boolean predictive;
+    private final boolean arena;
+    private final CompilationCache cache;
+    final CompileMetrics metrics;
+
+    int tokenCount;
+    long lexNanos;
+    long parseNanos;
+    long writeNanos;
+    // True if the result came from the cache without lexing or parsing
+    boolean cached;
+    // Lexical, syntax or I/O error message, null if the compilation succeeded
+    String error;
+
+    Compilation(String inputFile, String outputFile, boolean predictive, boolean arena) {
+        this(inputFile, outputFile, predictive, arena, null);
+    }
+
+    Compilation(String inputFile, String outputFile, boolean predictive, boolean arena, CompilationCache cache) {
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.predictive = predictive;
+        this.arena = arena;
+        this.cache = cache;
+        this.metrics = new CompileMetrics(inputFile);
+    }
+
+    Compilation run() {
+        compile();
+        metrics.tokens = tokenCount;
+        metrics.error = error;
+        metrics.finish();
+        return this;
+    }
+
+    private void compile() {
+        long start = System.nanoTime();
+        String key = null;
+        List<Token> tokens = null;
+        RecSPLParser parser = null;
+        try {
+            if (cache != null) {
+                key = cache.key(Files.readAllBytes(Paths.get(inputFile)), predictive);
+                if (runFromCache(key)) {
+                    writeNanos = System.nanoTime() - start;
+                    return;
+                }
+            }
+            CompileMetrics.PhaseEvent phase = metrics.begin(CompileMetrics.LEX);
+            tokens = RecSPLLexer.tokenize(inputFile);
+            metrics.end(phase);
+            tokenCount = tokens.size();
+            long lexed = System.nanoTime();
+            lexNanos = lexed - start;
+
+            parser = new RecSPLParser(tokens, metrics);
+            parser.setArenaTree(arena);
+            if (predictive) {
+                parser.parsePredictive();
+            } else {
+                parser.parse();
+            }
+            parseNanos = System.nanoTime() - lexed;
+        } catch (IOException e) {
+            // Unreadable input, not a property of the source, so it is not cached
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+            return;
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+
+        if (cache != null) {
+            try {
+                if (error == null) {
+                    cache.store(key, tokens, parser);
+                } else {
+                    cache.storeError(key, tokenCount, error);
+                }
+            } catch (IOException e) {
+                // A cache that cannot be written only costs the next compilation its hit
+            }
+        }
+        if (error == null) {
+            long parsed = System.nanoTime();
+            try {
+                parser.writeSyntaxTree(outputFile);
+            } catch (IOException e) {
+                error = e.getMessage();
+            }
+            writeNanos = System.nanoTime() - parsed;
+        }
+    }
+
+    private boolean runFromCache(String key) throws IOException {
+        try (CompilationCache.Entry entry = cache.lookup(key)) {
+            if (entry == null) {
+                return false;
+            }
+            cached = true;
+            tokenCount = entry.tokenCount;
+            error = entry.error;
+            if (entry.tree != null) {
+                try (Writer writer = new BufferedWriter(new FileWriter(outputFile), 1 << 16)) {
+                    entry.tree.writeXML(writer);
+                }
+            }
+            return true;
+        }
+    }
+
+    boolean succeeded() {
+        return error == null;
+    }
+}
@@ -0,0 +1,288 @@
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// On-disk cache of compilation results, addressed by the SHA-256 of the source bytes
+// together with FORMAT_VERSION, the grammar text and the parse mode. An entry lives in
+// <directory>/<first two hex digits>/<key> and is either
+//
+//   <key>.tok + <key>.tree  the binary token stream and binary syntax tree
+//   <key>.err               the token count and the error message of a failed compilation
+//
+// Files are written to a temporary name and moved into place atomically, the .tree file
+// last, so other processes never see a partial entry. A hit touches the entry's
+// modification time, and when the cache grows past its size limit the least recently
+// used entries are deleted under an exclusive lock on <directory>/lock. Readers do not
+// lock: an entry that disappears underneath them is a miss, and a tree that is already
+// mapped stays readable after its file is deleted.
+final class CompilationCache {
+    // Bump when the lexer, the token classes or one of the binary formats change
+    static final int FORMAT_VERSION = 1;
+
+    private static final String TOKENS = ".tok";
+    private static final String TREE = ".tree";
+    private static final String ERROR = ".err";
+    private static final String TEMPORARY = ".tmp";
+    // Eviction goes down to this fraction of the limit so it does not run on every store
+    private static final double LOW_WATER = 0.9;
+    // Temporary files older than this were left behind by a crashed writer
+    private static final long STALE_TEMPORARY_MILLIS = 60 * 60 * 1000;
+
+    private static String grammar;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // A cached result. Close it to unmap the tree.
+    static final class Entry implements Closeable {
+        final int tokenCount;
+        // Error message of a failed compilation, null when tree is set
+        final String error;
+        final BinarySyntaxTree tree;
+        private final Path tokensFile;
+
+        private Entry(int tokenCount, String error, BinarySyntaxTree tree, Path tokensFile) {
+            this.tokenCount = tokenCount;
+            this.error = error;
+            this.tree = tree;
+            this.tokensFile = tokensFile;
+        }
+
+        List<Token> tokens() throws IOException {
+            return RecSPLParser.readBinaryTokenStream(tokensFile.toString());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (tree != null) {
+                tree.close();
+            }
+        }
+    }
+
+    CompilationCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        long total = 0;
+        for (Path file : entryFiles()) {
+            total += sizeOf(file);
+        }
+        size.set(total);
+    }
+
+    private static synchronized String grammar() {
+        if (grammar == null) {
+            grammar = new RecSPLParser(new ArrayList<>()).describeGrammar();
+        }
+        return grammar;
+    }
+
+    String key(byte[] source, boolean predictive) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update((FORMAT_VERSION + "\n" + grammar() + (predictive ? "predictive" : "legacy") + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+            byte[] digest = sha.digest(source);
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private Path file(String key, String suffix) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + suffix);
+    }
+
+    // The cached result for a key, or null on a miss
+    Entry lookup(String key) throws IOException {
+        try {
+            Path error = file(key, ERROR);
+            if (Files.exists(error)) {
+                String[] content = new String(Files.readAllBytes(error), StandardCharsets.UTF_8).split("\n", 2);
+                touch(error);
+                hits.incrementAndGet();
+                return new Entry(Integer.parseInt(content[0]), content[1], null, null);
+            }
+            Path tree = file(key, TREE);
+            Path tokens = file(key, TOKENS);
+            BinarySyntaxTree opened = BinarySyntaxTree.open(tree.toString());
+            try {
+                int tokenCount = readTokenCount(tokens);
+                touch(tree);
+                hits.incrementAndGet();
+                return new Entry(tokenCount, null, opened, tokens);
+            } catch (IOException e) {
+                opened.close();
+                throw e;
+            }
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    private static int readTokenCount(Path tokens) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(tokens))) {
+            if (in.readInt() != BinaryTokenStream.MAGIC) {
+                throw new IOException("Corrupt cache entry: " + tokens);
+            }
+            in.readInt(); // version and flags
+            return in.readInt();
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only affects the eviction order
+        }
+    }
+
+    // Store a successful compilation
+    void store(String key, List<Token> tokens, RecSPLParser parser) throws IOException {
+        long added = publish(key, TOKENS, file -> RecSPLLexer.writeBinaryTokenStream(tokens, file.toString()));
+        added += publish(key, TREE, file -> parser.writeBinarySyntaxTree(file.toString()));
+        stored(added);
+    }
+
+    // Store a failed compilation so the error is reported again without recompiling
+    void storeError(String key, int tokenCount, String message) throws IOException {
+        byte[] content = (tokenCount + "\n" + message).getBytes(StandardCharsets.UTF_8);
+        stored(publish(key, ERROR, file -> Files.write(file, content)));
+    }
+
+    private void stored(long added) throws IOException {
+        stores.incrementAndGet();
+        if (size.addAndGet(added) > maxBytes) {
+            evict();
+        }
+    }
+
+    private interface FileContent {
+        void writeTo(Path file) throws IOException;
+    }
+
+    private long publish(String key, String suffix, FileContent content) throws IOException {
+        Path target = file(key, suffix);
+        Files.createDirectories(target.getParent());
+        Path temporary = Files.createTempFile(target.getParent(), key, TEMPORARY);
+        try {
+            content.writeTo(temporary);
+            long written = Files.size(temporary);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return written;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Delete least recently used entries until the cache is below the low-water mark
+    private synchronized void evict() throws IOException {
+        try (FileChannel lockFile = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = lockFile.lock();
+            try {
+                // Another process may have evicted already, so start from what is on disk
+                Map<String, List<Path>> entries = new HashMap<>();
+                Map<String, Long> lastUsed = new HashMap<>();
+                long total = 0;
+                long now = System.currentTimeMillis();
+                for (Path file : entryFiles()) {
+                    String name = file.getFileName().toString();
+                    long modified = lastModified(file);
+                    if (name.endsWith(TEMPORARY)) {
+                        if (now - modified > STALE_TEMPORARY_MILLIS) {
+                            Files.deleteIfExists(file);
+                        }
+                        continue;
+                    }
+                    String key = name.substring(0, name.lastIndexOf('.'));
+                    entries.computeIfAbsent(key, k -> new ArrayList<>()).add(file);
+                    lastUsed.merge(key, modified, Math::max);
+                    total += sizeOf(file);
+                }
+                List<String> oldestFirst = new ArrayList<>(entries.keySet());
+                oldestFirst.sort((a, b) -> Long.compare(lastUsed.get(a), lastUsed.get(b)));
+                long target = (long) (maxBytes * LOW_WATER);
+                for (int i = 0; i < oldestFirst.size() && total > target; i++) {
+                    // The tree goes first so readers stop finding the entry before its tokens disappear
+                    List<Path> files = entries.get(oldestFirst.get(i));
+                    files.sort((a, b) -> Boolean.compare(!a.toString().endsWith(TREE), !b.toString().endsWith(TREE)));
+                    for (Path file : files) {
+                        total -= sizeOf(file);
+                        Files.deleteIfExists(file);
+                    }
+                    evictions.incrementAndGet();
+                }
+                size.set(total);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private List<Path> entryFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path shard : shards) {
+                try (DirectoryStream<Path> inShard = Files.newDirectoryStream(shard)) {
+                    for (Path file : inShard) {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    String stats() {
+        long lookups = hits.get() + misses.get();
+        return "cache hits " + hits.get() + ", misses " + misses.get()
+            + (lookups > 0 ? String.format(" (%.1f%% hit rate)", 100.0 * hits.get() / lookups) : "")
+            + ", stores " + stores.get() + ", evictions " + evictions.get() + ", size " + size.get() + " bytes";
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Timers and counters of one compilation. Every phase is timed with System.nanoTime and
+// also committed as a recspl.Phase Flight Recorder event, and finish() commits a
+// recspl.Compilation event with the counters, so a recording started with
+//
+//   java -XX:StartFlightRecording=filename=compile.jfr Main
+//
+// shows the phases on the threads that ran them. With no recording the events are
+// disabled and committing one costs a field check. writeJson gives the same numbers as
+// a machine-readable report.
+//
+// The lexer thread of a pipelined compilation times the lex phase while the parser
+// thread fills in the rest; each thread writes its own slots of phaseNanos, and the
+// parser reads the lexer's slot only after the token queue was closed.
+final class CompileMetrics {
+    static final int LEX = 0;
+    static final int READ_TOKENS = 1;
+    static final int INITIALIZE_GRAMMAR = 2;
+    static final int PARSE = 3;
+    static final int WRITE_TREE = 4;
+    static final int ANALYZE = 5;
+
+    private static final String[] PHASE_NAMES = {
+        "lex", "parseXMLFile", "initializeGrammar", "parse", "writeSyntaxTree", "analyze"
+    };
+
+    // Input file name, null when the tokens did not come from a file
+    final String source;
+    private final long[] phaseNanos = new long[PHASE_NAMES.length];
+    private final boolean[] phaseRan = new boolean[PHASE_NAMES.length];
+    private final CompilationEvent compilation = new CompilationEvent();
+
+    long tokens;
+    long nodesCreated;
+    // Nodes taken out of the tree again, descendants of a removed node included
+    long nodesRemoved;
+    // Alternatives the parser looked at, and those it gave up on to look at the next one
+    long productionsTried;
+    long productionsBacktracked;
+    // Lexical, syntax or I/O error message, null if the compilation succeeded
+    String error;
+
+    CompileMetrics(String source) {
+        this.source = source;
+        compilation.begin();
+    }
+
+    @Name("recspl.Phase")
+    @Label("Compile Phase")
+    @Category("RecSPL")
+    @Description("One phase of a compilation, such as lexing or parsing")
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Source")
+        String source;
+
+        transient int index;
+        transient long startNanos;
+    }
+
+    @Name("recspl.Compilation")
+    @Label("Compilation")
+    @Category("RecSPL")
+    @Description("A whole compilation with its token, node and production counts")
+    static final class CompilationEvent extends Event {
+        @Label("Source")
+        String source;
+        @Label("Tokens")
+        long tokens;
+        @Label("Nodes Created")
+        long nodesCreated;
+        @Label("Nodes Removed")
+        long nodesRemoved;
+        @Label("Productions Tried")
+        long productionsTried;
+        @Label("Productions Backtracked")
+        long productionsBacktracked;
+        @Label("Parse Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long parseNanos;
+        @Label("Error")
+        String error;
+    }
+
+    // Start timing a phase, pass the result to end() when it is over
+    PhaseEvent begin(int phase) {
+        PhaseEvent event = new PhaseEvent();
+        event.index = phase;
+        event.begin();
+        event.startNanos = System.nanoTime();
+        return event;
+    }
+
+    void end(PhaseEvent event) {
+        phaseNanos[event.index] += System.nanoTime() - event.startNanos;
+        phaseRan[event.index] = true;
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = PHASE_NAMES[event.index];
+            event.source = source;
+            event.commit();
+        }
+    }
+
+    long phaseNanos(int phase) {
+        return phaseNanos[phase];
+    }
+
+    // The compilation is over: commit its event
+    void finish() {
+        compilation.end();
+        if (compilation.shouldCommit()) {
+            compilation.source = source;
+            compilation.tokens = tokens;
+            compilation.nodesCreated = nodesCreated;
+            compilation.nodesRemoved = nodesRemoved;
+            compilation.productionsTried = productionsTried;
+            compilation.productionsBacktracked = productionsBacktracked;
+            compilation.parseNanos = phaseNanos[PARSE];
+            compilation.error = error;
+            compilation.commit();
+        }
+    }
+
+    // The report as one JSON object; phases that did not run are left out
+    void writeJson(Writer out) throws IOException {
+        out.write("{\n  \"source\": " + quote(source) + ",\n  \"phases\": {");
+        String separator = "\n";
+        for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+            if (phaseRan[phase]) {
+                out.write(separator + "    " + quote(PHASE_NAMES[phase]) + ": {\"nanos\": " + phaseNanos[phase]
+                    + ", \"millis\": " + String.format(Locale.ROOT, "%.3f", phaseNanos[phase] / 1e6) + "}");
+                separator = ",\n";
+            }
+        }
+        out.write("\n  },\n  \"tokens\": " + tokens
+            + ",\n  \"nodesCreated\": " + nodesCreated
+            + ",\n  \"nodesRemoved\": " + nodesRemoved
+            + ",\n  \"productionsTried\": " + productionsTried
+            + ",\n  \"productionsBacktracked\": " + productionsBacktracked
+            + ",\n  \"error\": " + quote(error) + "\n}\n");
+    }
+
+    void writeJson(String fileName) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(fileName))) {
+            writeJson(writer);
+        }
+    }
+
+    static String quote(String text) {
+        if (text == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Long-running compiler that keeps parsers, with their compiled grammar and tables,
+// warm between requests. Each request is one line:
+//
+//   LEX <file>                                        tokens as TOKENSTREAM XML
+//   PARSE <file> [--predictive] [--arena]             syntax tree as SYNTREE XML
+//   COMPILE <file> <output> [--predictive] [--arena]  write the syntax tree to output
+//   STATS                                             request and parser counts
+//   QUIT                                              end this session
+//   SHUTDOWN                                          stop the server
+//
+// A reply starts with "OK <summary>" or "ERROR <message>". LEX and PARSE replies go on
+// with the document and end with a line holding a single "."; a document line starting
+// with "." is sent with a second "." in front, as in SMTP.
+//
+//   java CompileServer [--port n] [--threads n]
+//
+// Without --port the requests are read from stdin. With it the server listens on the
+// loopback interface only and serves up to --threads connections at a time.
+final class CompileServer {
+    private final ConcurrentLinkedQueue<RecSPLParser> idleParsers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger parsersCreated = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private volatile boolean running = true;
+    private ServerSocket serverSocket;
+
+    // Build the parsers up front so the first requests do not pay for the grammar
+    CompileServer(int warmParsers) {
+        for (int i = 0; i < warmParsers; i++) {
+            idleParsers.add(new RecSPLParser(new ArrayList<>()));
+            parsersCreated.incrementAndGet();
+        }
+    }
+
+    private RecSPLParser borrowParser(List<Token> tokens) {
+        RecSPLParser parser = idleParsers.poll();
+        if (parser == null) {
+            parsersCreated.incrementAndGet();
+            return new RecSPLParser(tokens);
+        }
+        parser.reset(tokens);
+        return parser;
+    }
+
+    private void releaseParser(RecSPLParser parser) {
+        idleParsers.add(parser);
+    }
+
+    // Answer requests until QUIT, SHUTDOWN or the end of the input
+    void serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        String line;
+        while (running && (line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (!handle(line.split("\\s+"), writer)) {
+                break;
+            }
+            writer.flush();
+        }
+        writer.flush();
+    }
+
+    // Returns false when the session should end
+    private boolean handle(String[] request, Writer out) throws IOException {
+        String command = request[0].toUpperCase();
+        switch (command) {
+            case "QUIT":
+                out.write("OK bye\n");
+                return false;
+            case "SHUTDOWN":
+                out.write("OK shutting down\n");
+                shutdown();
+                return false;
+            case "STATS":
+                out.write("OK requests " + requests.get() + " failed " + failures.get()
+                    + " parsers " + parsersCreated.get() + " busy " + busyNanos.get() / 1000 + " us\n");
+                return true;
+            case "LEX":
+            case "PARSE":
+            case "COMPILE":
+                break;
+            default:
+                out.write("ERROR unknown request " + request[0] + "\n");
+                return true;
+        }
+        int files = command.equals("COMPILE") ? 2 : 1;
+        if (request.length <= files) {
+            out.write("ERROR missing file name\n");
+            return true;
+        }
+
+        requests.incrementAndGet();
+        long start = System.nanoTime();
+        RecSPLParser parser = null;
+        try {
+            List<Token> tokens = RecSPLLexer.tokenize(request[1]);
+            if (command.equals("LEX")) {
+                out.write("OK " + tokens.size() + " tokens " + (System.nanoTime() - start) / 1000 + " us\n");
+                Writer document = new DotStuffingWriter(out);
+                document.write("<TOKENSTREAM>\n");
+                for (Token token : tokens) {
+                    document.write(token.toXML());
+                    document.write("\n");
+                }
+                document.write("</TOKENSTREAM>");
+                out.write("\n.\n");
+                return true;
+            }
+
+            parser = borrowParser(tokens);
+            boolean predictive = false;
+            boolean arena = false;
+            for (int i = files + 1; i < request.length; i++) {
+                predictive |= request[i].equals("--predictive");
+                arena |= request[i].equals("--arena");
+            }
+            parser.setArenaTree(arena);
+            if (predictive) {
+                parser.parsePredictive();
+            } else {
+                parser.parse();
+            }
+
+            String summary = tokens.size() + " tokens " + (System.nanoTime() - start) / 1000 + " us";
+            if (command.equals("COMPILE")) {
+                parser.writeSyntaxTree(request[2]);
+                out.write("OK " + summary + "\n");
+            } else {
+                out.write("OK " + summary + "\n");
+                parser.writeSyntaxTree(new DotStuffingWriter(out));
+                out.write("\n.\n");
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            String message = e.getMessage() != null ? e.getMessage() : e.toString();
+            out.write("ERROR " + message.replace('\n', ' ') + "\n");
+            if (parser != null) {
+                parser.metrics().error = message;
+            }
+        } finally {
+            if (parser != null) {
+                // Commits the request's Flight Recorder event
+                parser.metrics().finish();
+                releaseParser(parser);
+            }
+            busyNanos.addAndGet(System.nanoTime() - start);
+        }
+        return true;
+    }
+
+    private void shutdown() throws IOException {
+        running = false;
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    // Accept loopback connections until SHUTDOWN
+    void listen(int port, int threads) throws IOException {
+        ExecutorService connections = Executors.newFixedThreadPool(threads);
+        try (ServerSocket socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            serverSocket = socket;
+            System.err.println("CompileServer listening on " + socket.getLocalSocketAddress());
+            while (running) {
+                Socket client;
+                try {
+                    client = socket.accept();
+                } catch (IOException e) {
+                    if (running) {
+                        throw e;
+                    }
+                    break;
+                }
+                connections.execute(() -> {
+                    try (Socket connection = client) {
+                        serve(connection.getInputStream(), connection.getOutputStream());
+                    } catch (IOException e) {
+                        System.err.println("Connection error: " + e.getMessage());
+                    }
+                });
+            }
+        } finally {
+            connections.shutdown();
+        }
+    }
+
+    // Doubles a "." at the start of a line so a lone "." can end the document
+    private static final class DotStuffingWriter extends FilterWriter {
+        private boolean lineStart = true;
+
+        DotStuffingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (lineStart && c == '.') {
+                out.write('.');
+            }
+            out.write(c);
+            lineStart = c == '\n';
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            int from = offset;
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                if (lineStart && buffer[i] == '.') {
+                    out.write(buffer, from, i - from);
+                    out.write('.');
+                    from = i;
+                }
+                lineStart = buffer[i] == '\n';
+            }
+            out.write(buffer, from, end - from);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            write(text.toCharArray(), offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    public static void main(String[] args) {
+        int port = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Usage: java CompileServer [--port n] [--threads n]");
+                    return;
+            }
+        }
+        try {
+            if (port >= 0) {
+                new CompileServer(threads).listen(port, threads);
+            } else {
+                new CompileServer(1).serve(System.in, System.out);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
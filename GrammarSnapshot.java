@@ -0,0 +1,122 @@
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+// The RecSPL grammar compiled once per JVM into the tables the parsers work from: the
+// symbol table, the productions as arrays of symbol ids, the first sets, the terminals
+// reachable from each symbol and, on first use, the predictive parse table. Nothing is
+// written after construction, so every RecSPLParser on every thread shares the one
+// snapshot and constructing a parser does no grammar work.
+final class GrammarSnapshot {
+    // Built when the first parser asks for it, under the class initialization lock
+    private static final class RecSPL {
+        static final GrammarSnapshot SNAPSHOT = new GrammarSnapshot(RecSPLParser.grammarRules(), "PROG");
+    }
+
+    final SymbolTable symbols;
+    // Productions of each non-terminal as arrays of symbol ids
+    final int[][][] productions;
+    final BitSet[] firstSets;
+    // Terminals that can be reached from each symbol, indexed by symbol id then terminal index
+    final BitSet[] reachableTerminals;
+    final int startSymbol;
+    private volatile PredictiveTable predictiveTable;
+
+    GrammarSnapshot(Map<String, List<List<String>>> grammar, String startSymbol) {
+        symbols = new SymbolTable(grammar);
+        productions = new int[symbols.nonTerminalCount()][][];
+        for (int nonTerminal = 0; nonTerminal < productions.length; nonTerminal++) {
+            List<List<String>> rules = grammar.get(symbols.name(nonTerminal));
+            productions[nonTerminal] = new int[rules.size()][];
+            for (int i = 0; i < rules.size(); i++) {
+                List<String> rule = rules.get(i);
+                int[] production = new int[rule.size()];
+                for (int j = 0; j < production.length; j++) {
+                    production[j] = symbols.id(rule.get(j));
+                }
+                productions[nonTerminal][i] = production;
+            }
+        }
+        this.startSymbol = symbols.id(startSymbol);
+        firstSets = computeFirstSets();
+        reachableTerminals = computeReachableSets();
+    }
+
+    static GrammarSnapshot recspl() {
+        return RecSPL.SNAPSHOT;
+    }
+
+    // Only the predictive parser needs the table, so it is built the first time one asks
+    PredictiveTable predictiveTable() {
+        PredictiveTable table = predictiveTable;
+        if (table == null) {
+            synchronized (this) {
+                table = predictiveTable;
+                if (table == null) {
+                    table = new PredictiveTable(symbols, productions, startSymbol);
+                    predictiveTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    BitSet[] computeFirstSets() {
+        BitSet[] firstSets = new BitSet[symbols.nonTerminalCount()];
+        for (int nonTerminal = 0; nonTerminal < firstSets.length; nonTerminal++) {
+            firstSets[nonTerminal] = new BitSet(symbols.terminalCount());
+        }
+        // The empty string never ends up in a first set, so only the first symbol of each production counts
+        boolean changed;
+        do {
+            changed = false;
+            for (int nonTerminal = 0; nonTerminal < firstSets.length; nonTerminal++) {
+                BitSet firstSet = firstSets[nonTerminal];
+                int prevSize = firstSet.cardinality();
+                for (int[] production : productions[nonTerminal]) {
+                    if (production.length == 0) {
+                        continue;
+                    }
+                    int symbol = production[0];
+                    if (symbols.isTerminal(symbol)) {
+                        firstSet.set(symbols.terminalIndex(symbol));
+                    } else {
+                        firstSet.or(firstSets[symbol]);
+                    }
+                }
+                if (firstSet.cardinality() > prevSize) {
+                    changed = true;
+                }
+            }
+        } while (changed);
+        return firstSets;
+    }
+
+    // Closure of the terminals appearing anywhere below each symbol, so the parser's
+    // reachable() is a bit test instead of a grammar walk
+    private BitSet[] computeReachableSets() {
+        BitSet[] reach = new BitSet[symbols.size()];
+        for (int id = 0; id < reach.length; id++) {
+            reach[id] = new BitSet(symbols.terminalCount());
+            if (symbols.isTerminal(id)) {
+                reach[id].set(symbols.terminalIndex(id));
+            }
+        }
+        boolean changed;
+        do {
+            changed = false;
+            for (int id = 0; id < symbols.nonTerminalCount(); id++) {
+                int before = reach[id].cardinality();
+                for (int[] production : productions[id]) {
+                    for (int element : production) {
+                        reach[id].or(reach[element]);
+                    }
+                }
+                if (reach[id].cardinality() != before) {
+                    changed = true;
+                }
+            }
+        } while (changed);
+        return reach;
+    }
+}
@@ -0,0 +1,640 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps the tokens and the syntax tree of a source that is being edited and brings them
+// up to date after each edit instead of compiling the whole source again.
+//
+// Re-lexing starts at the last token that ends before the edit and stops at the first
+// lexeme after the edit that starts where an old token used to start, since from there
+// on the scanner sees the same text. Re-parsing uses the predictive parser on the
+// smallest node around the changed tokens whose surroundings cannot have been parsed
+// differently: it must start at least MAX_LOOKAHEAD tokens before the change, so no
+// prediction outside it looked at a changed token, and it must end no earlier than the
+// last changed token. If the node does not re-parse to exactly the shifted end of its old
+// span, the next larger one is tried, up to the whole program.
+//
+// Nodes of the re-parsed subtree keep their UNID when they cover the same tokens with
+// the same symbol as before, and so does every leaf whose token survived the edit.
+final class IncrementalCompiler {
+    // Token class of lexemes the DFA rejects. They stay in the token list so that a later
+    // edit can fix them, but nothing is parsed while there are any.
+    private static final String REJECTED = "rejected";
+    // Index of a token that is not in the token list any more
+    private static final int UNKNOWN = -2;
+
+    private final List<Token> tokens = new ArrayList<>();
+    private final RecSPLParser parser;
+    private String source;
+    private SyntaxTree tree;
+    // False when the last edit left the source without a tree, the next edit then
+    // re-parses from the root
+    private boolean treeValid;
+    private String error;
+    private int rejectedCount;
+    // Leaf of every token in the tree
+    private final Map<Token, Node> leaves = new IdentityHashMap<>();
+    private int nextUnid;
+    // Token indices removed by the last edit, [editFrom, editTo), and the number inserted there
+    private int editFrom;
+    private int editTo;
+    private int editInserted;
+
+    // What an edit changed. Token indices are in the token list after the edit.
+    static final class Result {
+        final int firstToken;
+        final int removedTokens;
+        final int insertedTokens;
+        // UNID of the re-parsed node, -1 if nothing had to be parsed or parsing failed
+        final int reparsedNode;
+        // UNID of an old subtree below it that was kept as it was, -1 if none
+        final int keptNode;
+        final int reusedNodes;
+        final int createdNodes;
+        // Lexical or syntax error, null when the tree is up to date
+        final String error;
+
+        Result(int firstToken, int removedTokens, int insertedTokens, int reparsedNode, int keptNode,
+               int reusedNodes, int createdNodes, String error) {
+            this.firstToken = firstToken;
+            this.removedTokens = removedTokens;
+            this.insertedTokens = insertedTokens;
+            this.reparsedNode = reparsedNode;
+            this.keptNode = keptNode;
+            this.reusedNodes = reusedNodes;
+            this.createdNodes = createdNodes;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return "tokens " + firstToken + " -" + removedTokens + " +" + insertedTokens
+                + (reparsedNode >= 0 ? ", re-parsed node " + reparsedNode : "")
+                + (keptNode >= 0 ? " keeping node " + keptNode : "")
+                + ", reused " + reusedNodes + ", created " + createdNodes + " nodes"
+                + (error != null ? ", " + error : "");
+        }
+    }
+
+    IncrementalCompiler(String source) {
+        this.source = source;
+        lex(0, -1, 0, tokens);
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            token.id = i + 1;
+            if (token.tokenClass == REJECTED) {
+                rejectedCount++;
+            }
+        }
+        parser = new RecSPLParser(tokens);
+        if (rejectedCount > 0) {
+            error = lexicalError();
+        } else {
+            reparseRoot(null);
+        }
+    }
+
+    String source() {
+        return source;
+    }
+
+    List<Token> tokens() {
+        return tokens;
+    }
+
+    // The tree of the last source that parsed, null if none has
+    SyntaxTree syntaxTree() {
+        return tree;
+    }
+
+    // True if syntaxTree() belongs to the current source
+    boolean isValid() {
+        return treeValid;
+    }
+
+    String error() {
+        return error;
+    }
+
+    void writeSyntaxTree(Writer out) throws IOException {
+        tree.writeXML(out);
+    }
+
+    // Replace length characters at offset with replacement
+    Result edit(int offset, int length, String replacement) {
+        if (offset < 0 || length < 0 || offset + length > source.length()) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + length + " outside a source of " + source.length() + " characters");
+        }
+        source = source.substring(0, offset) + replacement + source.substring(offset + length);
+        int delta = replacement.length() - length;
+
+        // A lexeme depends on its characters and the one after it, so tokens that end
+        // before the edit are unchanged
+        int first = firstEndingAtOrAfter(offset);
+        int from = first > 0 ? end(tokens.get(first - 1)) : 0;
+        List<Token> lexed = new ArrayList<>();
+        int resume = lex(from, offset + replacement.length(), delta, lexed);
+
+        // Keep the old Token objects, and with them their leaves, where the new lexemes are the same
+        int prefix = 0;
+        while (prefix < lexed.size() && first + prefix < resume && same(lexed.get(prefix), tokens.get(first + prefix), 0)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < lexed.size() - prefix && resume - suffix > first + prefix
+            && same(lexed.get(lexed.size() - 1 - suffix), tokens.get(resume - 1 - suffix), delta)) {
+            suffix++;
+        }
+        int changeFrom = first + prefix;
+        int changeTo = resume - suffix;
+        List<Token> inserted = lexed.subList(prefix, lexed.size() - suffix);
+
+        // Candidates are found while the token ids still are the old indices plus one
+        List<Node> candidates = new ArrayList<>();
+        if (treeValid && changeTo > 0) {
+            findCandidates(tokens.get(changeTo - 1), changeFrom, candidates);
+        }
+
+        List<Token> removed = tokens.subList(changeFrom, changeTo);
+        for (Token token : removed) {
+            if (token.tokenClass == REJECTED) {
+                rejectedCount--;
+            }
+        }
+        for (Token token : inserted) {
+            if (token.tokenClass == REJECTED) {
+                rejectedCount++;
+            }
+        }
+        int removedCount = removed.size();
+        int insertedCount = inserted.size();
+        removed.clear();
+        tokens.addAll(changeFrom, inserted);
+        for (int i = changeFrom; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            token.id = i + 1;
+            if (i >= changeFrom + insertedCount) {
+                token.offset += delta;
+            }
+        }
+        parser.reset(tokens, changeFrom, changeFrom + insertedCount);
+
+        if (rejectedCount > 0) {
+            treeValid = false;
+            error = lexicalError();
+            return new Result(changeFrom, removedCount, insertedCount, -1, -1, 0, 0, error);
+        }
+        if (treeValid && removedCount == 0 && insertedCount == 0) {
+            // Only whitespace changed
+            return new Result(changeFrom, 0, 0, -1, -1, 0, 0, null);
+        }
+
+        editFrom = changeFrom;
+        editTo = changeTo;
+        editInserted = insertedCount;
+        int shift = insertedCount - removedCount;
+        for (int i = 0; i < candidates.size(); i++) {
+            Node candidate = candidates.get(i);
+            int start = firstToken(candidate).id - 1;
+            SpineReuse reuse = new SpineReuse(candidate, changeFrom + insertedCount);
+            SyntaxTree fragment;
+            try {
+                fragment = parser.parseFragment(candidate.symbolId, start, reuse);
+            } catch (RuntimeException e) {
+                // A larger node or the whole program would expand this one at the same
+                // token in the same way and fail with the same error
+                treeValid = false;
+                error = e.getMessage();
+                return new Result(changeFrom, removedCount, insertedCount, -1, -1, 0, 0, error);
+            }
+            if (reuse.found != null || parser.position() == newEnd(candidate, changeTo, shift) + 1) {
+                int[] counts = splice(candidate, fragment, start, reuse.found, reuse.parent);
+                error = null;
+                return new Result(changeFrom, removedCount, insertedCount, candidate.unid,
+                    reuse.found != null ? reuse.found.unid : -1, counts[0], counts[1], null);
+            }
+        }
+        SpineReuse reuse = treeValid ? new SpineReuse(tree.getRoot(), changeFrom + insertedCount) : null;
+        int[] counts = reparseRoot(reuse);
+        return new Result(changeFrom, removedCount, insertedCount, treeValid ? tree.getRoot().unid : -1,
+            reuse != null && reuse.found != null ? reuse.found.unid : -1, counts[0], counts[1], error);
+    }
+
+    // Parse the whole program, splicing it into the current tree if there is one.
+    // Returns the reused and created node counts.
+    private int[] reparseRoot(SpineReuse reuse) {
+        SyntaxTree fragment;
+        try {
+            fragment = parser.parseFragment(parser.startSymbol(), 0, reuse);
+            if ((reuse == null || reuse.found == null) && parser.position() < tokens.size()) {
+                throw new RuntimeException("Syntax error: Unexpected token " + tokens.get(parser.position()).word
+                    + " at position " + parser.position());
+            }
+        } catch (RuntimeException e) {
+            treeValid = false;
+            error = e.getMessage();
+            return new int[2];
+        }
+        treeValid = true;
+        error = null;
+        if (tree == null) {
+            tree = fragment;
+            int count = 0;
+            for (Node node : preorder(tree.getRoot(), null)) {
+                if (node.token != null) {
+                    leaves.put(node.token, node);
+                }
+                count++;
+            }
+            nextUnid = count;
+            return new int[] {0, count};
+        }
+        return reuse != null ? splice(tree.getRoot(), fragment, 0, reuse.found, reuse.parent)
+            : splice(tree.getRoot(), fragment, 0, null, -1);
+    }
+
+    // Ancestors of the leaf of the last changed token, smallest first, that start at least
+    // MAX_LOOKAHEAD tokens before changeFrom. Being ancestors they end at or after it.
+    private void findCandidates(Token last, int changeFrom, List<Node> candidates) {
+        Node node = leaves.get(last);
+        while (node != null && node.parentId >= 0) {
+            node = tree.getNode(node.parentId);
+            if (node == tree.getRoot()) {
+                break;
+            }
+            if (firstToken(node).id - 1 <= changeFrom - PredictiveTable.MAX_LOOKAHEAD) {
+                candidates.add(node);
+            }
+        }
+    }
+
+    // Where an old node around the change has to end in the edited token list: its old
+    // end moved by the number of tokens the edit added. Its last token is either the one
+    // before the change, the last removed one or one after the change, already renumbered.
+    private int newEnd(Node node, int changeTo, int shift) {
+        Token last = lastToken(node);
+        int index = last.id - 1;
+        boolean renumbered = index < tokens.size() && tokens.get(index) == last && index >= changeTo + shift;
+        return renumbered ? index : changeTo - 1 + shift;
+    }
+
+    // Replace the subtree below anchor by the fragment parsed for it, with the old subtree
+    // graft, if any, as the last child of the fragment node graftParent. Nodes that cover
+    // the same tokens with the same symbol keep their UNID. Returns the reused and created counts.
+    private int[] splice(Node anchor, SyntaxTree fragment, int start, Node graft, int graftParent) {
+        List<Node> oldNodes = preorder(anchor, graft);
+        List<SpanKey> oldKeys = spanKeys(oldNodes, start - 1);
+        Map<SpanKey, List<Node>> reusable = new HashMap<>();
+        for (int i = 1; i < oldNodes.size(); i++) {
+            if (oldKeys.get(i) != null) {
+                reusable.computeIfAbsent(oldKeys.get(i), k -> new ArrayList<>(1)).add(oldNodes.get(i));
+            }
+        }
+        for (Node child : anchor.getChildren()) {
+            tree.discardSubtree(child, graft);
+        }
+        anchor.getChildren().clear();
+        for (int i = 1; i < oldNodes.size(); i++) {
+            Node old = oldNodes.get(i);
+            if (old.token != null && leaves.get(old.token) == old) {
+                leaves.remove(old.token);
+            }
+        }
+
+        List<Node> newNodes = preorder(fragment.getRoot(), null);
+        List<SpanKey> newKeys = spanKeys(newNodes, start - 1);
+        // Fragment UNIDs are 0, 1, ... in preorder
+        Node[] placed = new Node[newNodes.size()];
+        placed[fragment.getRoot().unid] = anchor;
+        int reused = 0;
+        int created = 0;
+        for (int i = 1; i < newNodes.size(); i++) {
+            Node node = newNodes.get(i);
+            List<Node> matches = reusable.get(newKeys.get(i));
+            int unid;
+            if (matches != null && !matches.isEmpty()) {
+                unid = matches.remove(0).unid;
+                reused++;
+            } else {
+                unid = nextUnid++;
+                created++;
+            }
+            Node parent = placed[node.parentId];
+            Node copy;
+            if (node.token != null) {
+                copy = new Node(unid, parent.unid, node.token);
+                tree.addLeafNode(copy);
+                leaves.put(node.token, copy);
+            } else {
+                copy = new Node(unid, parent.unid, node.symbolId, false);
+                tree.addInnerNode(copy);
+            }
+            parent.addChild(copy);
+            placed[node.unid] = copy;
+        }
+        if (graft != null) {
+            Node parent = placed[graftParent];
+            graft.parentId = parent.unid;
+            parent.addChild(graft);
+        }
+        return new int[] {reused, created};
+    }
+
+    // Ends a fragment parse at a node on the right spine of the old subtree (its last
+    // child, that one's last child and so on): once that node's symbol is all that is left
+    // to parse, at the token it started at and past the changed tokens, parsing on would
+    // only build the same subtree again
+    private final class SpineReuse implements RecSPLParser.SubtreeReuse {
+        private final Node top;
+        private final int minimum;
+        private Node spine;
+        Node found;
+        int parent = -1;
+
+        SpineReuse(Node top, int minimum) {
+            this.top = top;
+            this.minimum = minimum;
+            this.spine = top;
+        }
+
+        @Override
+        public boolean reuse(int symbol, int position, int parentNode) {
+            if (position < minimum) {
+                return false;
+            }
+            // Spine nodes start at non-decreasing positions, and so do the calls
+            while (spine != null) {
+                Token first = firstToken(spine);
+                if (first == null) {
+                    spine = null;
+                    break;
+                }
+                int start = indexOf(first);
+                if (start == UNKNOWN || start < position) {
+                    spine = lastChild(spine);
+                    continue;
+                }
+                for (Node node = spine; node != null && start == position && firstToken(node) == first; node = lastChild(node)) {
+                    if (node != top && node.symbolId == symbol && !node.isLeaf()) {
+                        found = node;
+                        parent = parentNode;
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return false;
+        }
+    }
+
+    private static Node lastChild(Node node) {
+        List<Node> children = node.getChildren();
+        return children.isEmpty() ? null : children.get(children.size() - 1);
+    }
+
+    // Index of a token in the current token list. A token removed by the last edit maps to
+    // the inserted token at the same position if there is one, otherwise to UNKNOWN.
+    private int indexOf(Token token) {
+        int index = token.id - 1;
+        if (index < tokens.size() && tokens.get(index) == token) {
+            return index;
+        }
+        return index >= editFrom && index < editTo && index < editFrom + editInserted ? index : UNKNOWN;
+    }
+
+    // Nodes of the subtree below top without the subtree below skip, parents before
+    // children and children in order
+    private static List<Node> preorder(Node top, Node skip) {
+        List<Node> order = new ArrayList<>();
+        List<Node> pending = new ArrayList<>();
+        pending.add(top);
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            order.add(node);
+            List<Node> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                if (children.get(i) != skip) {
+                    pending.add(children.get(i));
+                }
+            }
+        }
+        return order;
+    }
+
+    // Key of each node in a preorder list whose first token follows token index before:
+    // its symbol and the indices of its first and last token. A node without tokens gets
+    // an empty span where it stands. Nodes on tokens without an index get no key.
+    private List<SpanKey> spanKeys(List<Node> order, int before) {
+        int count = order.size();
+        int[] first = new int[count];
+        int[] last = new int[count];
+        int[] previous = new int[count];
+        boolean[] covers = new boolean[count];
+        Map<Node, Integer> position = new IdentityHashMap<>();
+        int seen = before;
+        for (int i = 0; i < count; i++) {
+            Node node = order.get(i);
+            position.put(node, i);
+            previous[i] = seen;
+            if (node.token != null) {
+                seen = indexOf(node.token);
+                first[i] = seen;
+                last[i] = seen;
+                covers[i] = true;
+            }
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            for (Node child : order.get(i).getChildren()) {
+                Integer c = position.get(child);
+                if (c != null && covers[c]) {
+                    if (!covers[i]) {
+                        first[i] = first[c];
+                        covers[i] = true;
+                    }
+                    last[i] = last[c];
+                }
+            }
+        }
+        List<SpanKey> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int symbol = order.get(i).symbolId;
+            if (covers[i]) {
+                keys.add(first[i] == UNKNOWN || last[i] == UNKNOWN ? null : new SpanKey(symbol, first[i], last[i]));
+            } else {
+                keys.add(previous[i] == UNKNOWN ? null : new SpanKey(symbol, previous[i] + 1, previous[i]));
+            }
+        }
+        return keys;
+    }
+
+    private static Token firstToken(Node node) {
+        return edgeToken(node, true);
+    }
+
+    private static Token lastToken(Node node) {
+        return edgeToken(node, false);
+    }
+
+    // First or last token below node, skipping subtrees that cover no tokens
+    private static Token edgeToken(Node top, boolean first) {
+        List<Node> pending = new ArrayList<>();
+        pending.add(top);
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            if (node.token != null) {
+                return node.token;
+            }
+            List<Node> children = node.getChildren();
+            for (int i = 0; i < children.size(); i++) {
+                pending.add(children.get(first ? children.size() - 1 - i : i));
+            }
+        }
+        return null;
+    }
+
+    // Symbol and token span of a node
+    private static final class SpanKey {
+        private final int symbol;
+        private final int first;
+        private final int last;
+
+        SpanKey(int symbol, int first, int last) {
+            this.symbol = symbol;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof SpanKey)) {
+                return false;
+            }
+            SpanKey key = (SpanKey) other;
+            return symbol == key.symbol && first == key.first && last == key.last;
+        }
+
+        @Override
+        public int hashCode() {
+            return (symbol * 31 + first) * 31 + last;
+        }
+    }
+
+    // Scan the source from offset with the rules of MappedSourceScanner. Once a lexeme starts
+    // at or after sync (when sync >= 0) at a position that, moved back by delta, is the
+    // offset of an old token, scanning stops: from there on the old tokens are still right.
+    // Returns the index of that old token, or the old token count at the end of the source.
+    private int lex(int offset, int sync, int delta, List<Token> into) {
+        int i = offset;
+        int n = source.length();
+        while (true) {
+            while (i < n && isWhitespace(source.charAt(i))) {
+                i++;
+            }
+            if (i == n) {
+                return tokens.size();
+            }
+            if (sync >= 0 && i >= sync) {
+                int old = tokenStartingAt(i - delta);
+                if (old >= 0) {
+                    return old;
+                }
+            }
+            int j = lexemeEnd(i);
+            String word = source.substring(i, j);
+            int tokenClass = TokenDFA.classify(word);
+            Token token = new Token(0, tokenClass == TokenDFA.REJECT ? REJECTED : TokenDFA.className(tokenClass), word);
+            token.offset = i;
+            into.add(token);
+            i = j;
+        }
+    }
+
+    private int lexemeEnd(int i) {
+        int n = source.length();
+        char c = source.charAt(i);
+        if (isPunctuation(c)) {
+            return i + 1;
+        }
+        if (c == '"') {
+            for (int k = i + 1; k < n; k++) {
+                char d = source.charAt(k);
+                if (d == '"') {
+                    return k + 1;
+                }
+                if (d == '\n' || d == '\r') {
+                    return k;
+                }
+            }
+            return n;
+        }
+        for (int k = i + 1; k < n; k++) {
+            char d = source.charAt(k);
+            if (isWhitespace(d) || isPunctuation(d) || d == '"') {
+                return k;
+            }
+        }
+        return n;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c < 0x80 && MappedSourceScanner.isWhitespace((byte) c);
+    }
+
+    private static boolean isPunctuation(char c) {
+        return c < 0x80 && MappedSourceScanner.isPunctuation((byte) c);
+    }
+
+    private static int end(Token token) {
+        return token.offset + token.word.length();
+    }
+
+    private static boolean same(Token lexed, Token old, int delta) {
+        return lexed.offset == old.offset + delta && lexed.word.equals(old.word);
+    }
+
+    // Index of the first (old) token that ends at or after offset
+    private int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (end(tokens.get(mid)) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Index of the old token that starts at offset, or -1
+    private int tokenStartingAt(int offset) {
+        int low = 0;
+        int high = tokens.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = tokens.get(mid).offset;
+            if (start < offset) {
+                low = mid + 1;
+            } else if (start > offset) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private String lexicalError() {
+        for (Token token : tokens) {
+            if (token.tokenClass == REJECTED) {
+                return "Lexical Error: Unrecognized token: " + token.word;
+            }
+        }
+        return null;
+    }
+}
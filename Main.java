@@ -1,19 +1,85 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
 public class Main {
+    // Tokens the lexer may run ahead of the parser
+    private static final int TOKEN_QUEUE_CAPACITY = 1 << 14;
+
     public static void main(String[] args) {
+        // --batch <directory|manifest> [options] compiles many files, see BatchCompiler
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchCompiler.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        CompileMetrics metrics = new CompileMetrics("input.txt");
         try {
-            RecSPLLexer.lex("input.txt", "output.xml");
-            System.out.println("Lexing completed. XML output generated.");
-            Thread.sleep(1000); // Delay for 1 second
+            // The lexer runs on its own thread and the parser consumes its tokens as they arrive
+            TokenQueue queue = new TokenQueue(TOKEN_QUEUE_CAPACITY);
+            RecSPLLexer.lexAsync("input.txt", queue, metrics);
 
-            RecSPLParser parser = new RecSPLParser("output.xml");
-            Thread.sleep(1000); // Delay for 1 second
+            RecSPLParser parser = new RecSPLParser(queue, metrics);
+            // --arena stores the syntax tree in primitive arrays instead of Node objects
+            parser.setArenaTree(Arrays.asList(args).contains("--arena"));
 
-            parser.parse();
-            Thread.sleep(1000); // Delay for 1 second
+            try {
+                // --predictive selects the table-driven LL parser
+                if (Arrays.asList(args).contains("--predictive")) {
+                    parser.parsePredictive();
+                } else {
+                    parser.parse();
+                }
+            } catch (RuntimeException e) {
+                queue.cancel();
+                throw e;
+            }
+            List<Token> tokens = parser.finishInput();
+            System.out.println("Lexing completed.");
+            // The XML token stream is only written when asked for
+            if (Arrays.asList(args).contains("--tokens")) {
+                RecSPLLexer.writeTokenStream(tokens, "output.xml");
+                System.out.println("XML output generated.");
+            }
+
+            // --semantic resolves names and checks types before the tree is written
+            if (Arrays.asList(args).contains("--semantic")) {
+                CompileMetrics.PhaseEvent phase = metrics.begin(CompileMetrics.ANALYZE);
+                List<String> errors = new SemanticAnalyzer(parser.syntaxTree()).analyze();
+                metrics.end(phase);
+                for (String error : errors) {
+                    System.out.println(error);
+                }
+                System.out.println("Semantic analysis completed with " + errors.size() + " errors.");
+            }
 
             parser.writeSyntaxTreeToFile("syntaxtree.xml");
+            // --run executes the program on the bytecode VM, --interpret on the reference tree interpreter
+            if (Arrays.asList(args).contains("--run")) {
+                Bytecode program = BytecodeCompiler.compile(parser.syntaxTree());
+                if (Arrays.asList(args).contains("--bytecode")) {
+                    System.out.print(program.disassemble());
+                }
+                new BytecodeVM(program).run(BytecodeVM.lines(System.in), System.out);
+            } else if (Arrays.asList(args).contains("--interpret")) {
+                new TreeInterpreter(parser.syntaxTree()).run(BytecodeVM.lines(System.in), System.out);
+            }
+            // --binary-tree also writes the tree in the compact binary format
+            if (Arrays.asList(args).contains("--binary-tree")) {
+                parser.writeSyntaxTreeBinary("syntaxtree.bin");
+            }
         } catch (Exception e) {
+            metrics.error = e.getMessage() != null ? e.getMessage() : e.toString();
             e.printStackTrace();
         }
+        metrics.finish();
+        // --report writes the phase times and counters as JSON, see CompileMetrics
+        if (Arrays.asList(args).contains("--report")) {
+            try {
+                metrics.writeJson("compile-report.json");
+                System.out.println("Compile report written to compile-report.json");
+            } catch (IOException e) {
+                System.err.println("Error writing compile report: " + e.getMessage());
+            }
+        }
     }
 }
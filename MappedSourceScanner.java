@@ -0,0 +1,147 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Cursor over the raw bytes of a source file mapped with a FileChannel.
+// Token boundaries are found by the scanner itself, so tokens do not have to be
+// separated by whitespace: ( ) { } , ; = < always form a token of their own and a
+// text literal runs from its opening quote to the closing quote on the same line.
+// Files larger than one mapping window are mapped piece by piece. A scanner can be limited
+// to a range of the file, which is how ParallelLexer scans its chunks.
+final class MappedSourceScanner implements Closeable {
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    private final FileChannel channel;
+    // End of the scanned range, the file size unless a range was given
+    private final long rangeEnd;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int cursor;
+
+    // Bounds of the current lexeme inside the window and the DFA state it ended in
+    private int start;
+    private int end;
+    private int state;
+    private final byte[] scratch = new byte[64];
+
+    MappedSourceScanner(String fileName) throws IOException {
+        this(fileName, 0, Long.MAX_VALUE);
+    }
+
+    // Scan only the bytes [from, to) of the file; both must lie between two lexemes
+    MappedSourceScanner(String fileName, long from, long to) throws IOException {
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        this.rangeEnd = Math.min(to, channel.size());
+        remap(from);
+    }
+
+    private void remap(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, rangeEnd - position));
+        cursor = 0;
+    }
+
+    // Advance to the next lexeme, returns false once the input is exhausted
+    boolean next() throws IOException {
+        while (true) {
+            int limit = window.limit();
+            int i = cursor;
+            while (i < limit && isWhitespace(window.get(i))) {
+                i++;
+            }
+            boolean lastWindow = windowStart + limit >= rangeEnd;
+            if (i == limit) {
+                if (lastWindow) {
+                    cursor = i;
+                    return false;
+                }
+                remap(windowStart + i);
+                continue;
+            }
+            int j = scanLexeme(i, limit);
+            if (j < 0) {
+                if (lastWindow) {
+                    j = limit;
+                } else if (i == 0) {
+                    throw new IOException("Lexeme at offset " + windowStart + " is longer than the mapping window");
+                } else {
+                    // The lexeme crosses the end of the window, map again starting at the lexeme
+                    remap(windowStart + i);
+                    continue;
+                }
+            }
+            start = i;
+            end = j;
+            cursor = j;
+            state = TokenDFA.run(window, start, end);
+            return true;
+        }
+    }
+
+    // Returns the end of the lexeme starting at i, or -1 if it runs into the end of the window
+    private int scanLexeme(int i, int limit) {
+        byte c = window.get(i);
+        if (isPunctuation(c)) {
+            return i + 1;
+        }
+        if (c == '"') {
+            for (int k = i + 1; k < limit; k++) {
+                byte b = window.get(k);
+                if (b == '"') {
+                    return k + 1;
+                }
+                if (b == '\n' || b == '\r') {
+                    return k;
+                }
+            }
+            return -1;
+        }
+        for (int k = i + 1; k < limit; k++) {
+            byte b = window.get(k);
+            if (isWhitespace(b) || isPunctuation(b) || b == '"') {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    // Token class code of the current lexeme, see TokenDFA
+    int tokenClass() {
+        return TokenDFA.tokenClass(state);
+    }
+
+    // Text of the current lexeme; reserved keywords reuse their canonical String
+    String word() {
+        String keyword = TokenDFA.keyword(state);
+        if (keyword != null) {
+            return keyword;
+        }
+        int length = end - start;
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        window.get(start, bytes, 0, length);
+        // Every lexeme the DFA accepts is ASCII, anything else is only used in error messages
+        return new String(bytes, 0, length, tokenClass() == TokenDFA.REJECT ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+    }
+
+    // Absolute file offset of the current lexeme
+    long offset() {
+        return windowStart + start;
+    }
+
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    static boolean isPunctuation(byte b) {
+        return b == '(' || b == ')' || b == '{' || b == '}' || b == ',' || b == ';' || b == '=' || b == '<';
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,20 +1,28 @@
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 class Node {
     int parentId;
     int unid;
-    String symbol; // Non-terminal or terminal symbol
+    int symbolId; // Non-terminal or terminal symbol id, see SymbolTable
+    Token token; // Token matched by a leaf, null for every other node
     List<Node> children;
     boolean isLeaf;
 
-    public Node(int unid, int p, String symbol, boolean isLeaf) {
+    public Node(int unid, int p, int symbolId, boolean isLeaf) {
         this.parentId = p;
         this.unid = unid;
-        this.symbol = symbol;
+        this.symbolId = symbolId;
         this.children = new ArrayList<>();
         this.isLeaf = isLeaf;
     }
 
+    // Leaf for a matched token
+    public Node(int unid, int p, Token token) {
+        this(unid, p, token.symbolId, true);
+        this.token = token;
+    }
+
     public void addChild(Node child) {
         this.children.add(child);
     }
@@ -23,8 +31,13 @@ class Node {
         return unid;
     }
 
-    public String getSymbol() {
-        return symbol;
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    // Text of the node: the word of a matched token, otherwise the grammar symbol
+    public String getLabel(SymbolTable symbols) {
+        return token != null ? token.word : symbols.name(symbolId);
     }
 
     public List<Node> getChildren() {
@@ -38,30 +51,32 @@ class Node {
     public void setLeaf(boolean leaf) {
         isLeaf = leaf;
     }
-    public void setSymbol(String symbol) {
-        this.symbol = symbol;
+    public void setSymbolId(int symbolId) {
+        this.symbolId = symbolId;
     }
 
-    public String toXML() {
-        StringBuilder xml = new StringBuilder();
+    public void writeXML(XmlEmitter xml, SymbolTable symbols) throws IOException {
         if (isLeaf) {
-            xml.append("<LEAF>\n");
-            xml.append("\t<PARENT>").append(this.parentId).append("</PARENT>\n");
-            xml.append("\t<UNID>").append(this.unid).append("</UNID>\n");
-            xml.append("\t<TERMINAL>\n").append(this.symbol).append("\n\t</TERMINAL>\n");
-            xml.append("</LEAF>\n");
+            xml.text("<LEAF>\n");
+            xml.text("\t<PARENT>").number(this.parentId).text("</PARENT>\n");
+            xml.text("\t<UNID>").number(this.unid).text("</UNID>\n");
+            xml.text("\t<TERMINAL>\n").text(getLabel(symbols)).text("\n\t</TERMINAL>\n");
+            xml.text("</LEAF>\n");
         } else {
-            xml.append("<IN>\n");
-            xml.append("\t<UNID>").append(this.unid).append("</UNID>\n");
-            xml.append("\t<SYMB>").append(this.symbol).append("</SYMB>\n");
-            xml.append("\t<CHILDREN>\n");
-            for (Node child : children) {
-                xml.append("\t\t<ID>").append(child.getUNID()).append("</ID>\n");
-            }
-            xml.append("\t</CHILDREN>\n");
-            xml.append("</IN>\n");
+            xml.text("<IN>\n");
+            xml.text("\t<UNID>").number(this.unid).text("</UNID>\n");
+            xml.text("\t<SYMB>").text(symbols.name(this.symbolId)).text("</SYMB>\n");
+            writeChildren(xml);
+            xml.text("</IN>\n");
+        }
+    }
+
+    void writeChildren(XmlEmitter xml) throws IOException {
+        xml.text("\t<CHILDREN>\n");
+        for (Node child : children) {
+            xml.text("\t\t<ID>").number(child.getUNID()).text("</ID>\n");
         }
-        return xml.toString();
+        xml.text("\t</CHILDREN>\n");
     }
 
     public void removeChild(Node childNode) {
@@ -72,10 +87,10 @@ class Node {
         String temp = "";
         temp += "Node{" +
                 "unid=" + unid +
-                ", symbol='" + symbol + '\'' +
+                ", symbolId=" + symbolId +
                 ", children=[";
         for (Node child : children) {
-            temp += child.getSymbol() + ", ";
+            temp += child.getSymbolId() + ", ";
         }
         temp += "]}";
         temp += "isLeaf=" + isLeaf;
@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Lexes one large file on a fork/join pool. The file is cut into chunks between lexemes,
+// each chunk is scanned by its own MappedSourceScanner, and the chunk token lists are
+// joined with their ids shifted by the tokens before them. The result is the token list
+// RecSPLLexer.tokenizeMapped gives, and when there are lexical errors the one reported is
+// the first in the file, as it would be sequentially.
+//
+// A text literal ends at its closing quote or at the end of its line, so the byte after a
+// newline is always a safe cut. Only on a line longer than NEWLINE_SEARCH are quotes
+// counted from the previous cut to find whitespace outside of a literal.
+final class ParallelLexer {
+    // Smallest chunk worth a task of its own
+    static final long MIN_CHUNK_SIZE = 1 << 20;
+    // Chunks per pool thread, so a slow chunk does not leave the other threads idle
+    private static final int CHUNKS_PER_THREAD = 4;
+    // How far past a chunk's nominal end a newline is looked for
+    private static final int NEWLINE_SEARCH = 1 << 16;
+
+    private ParallelLexer() {
+    }
+
+    // Tokens of one chunk, numbered from 1 until they are shifted into place
+    private static final class Chunk {
+        final String fileName;
+        final long from;
+        final long to;
+        final List<Token> tokens = new ArrayList<>();
+        Exception error;
+
+        Chunk(String fileName, long from, long to) {
+            this.fileName = fileName;
+            this.from = from;
+            this.to = to;
+        }
+
+        Chunk scan() {
+            try {
+                RecSPLLexer.scanMapped(new MappedSourceScanner(fileName, from, to), tokens::add);
+            } catch (Exception e) {
+                error = e;
+            }
+            return this;
+        }
+
+        Chunk shift(int tokensBefore) {
+            if (tokensBefore != 0) {
+                for (Token token : tokens) {
+                    token.id += tokensBefore;
+                }
+            }
+            return this;
+        }
+    }
+
+    static List<Token> tokenize(String inputFileName, ForkJoinPool pool) throws Exception {
+        long[] cuts;
+        try (FileChannel channel = FileChannel.open(Paths.get(inputFileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long chunks = Math.max(1, Math.min(size / MIN_CHUNK_SIZE, (long) pool.getParallelism() * CHUNKS_PER_THREAD));
+            cuts = cuts(channel, size, (int) chunks);
+        }
+        List<Chunk> chunks = new ArrayList<>();
+        List<Callable<Chunk>> scans = new ArrayList<>();
+        for (int i = 0; i + 1 < cuts.length; i++) {
+            Chunk chunk = new Chunk(inputFileName, cuts[i], cuts[i + 1]);
+            chunks.add(chunk);
+            scans.add(chunk::scan);
+        }
+        invokeAll(pool, scans);
+
+        // Everything after the first error is thrown away, as a sequential lex never gets there
+        List<Callable<Chunk>> shifts = new ArrayList<>();
+        int tokensBefore = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.error != null) {
+                throw chunk.error;
+            }
+            int offset = tokensBefore;
+            shifts.add(() -> chunk.shift(offset));
+            tokensBefore = Math.addExact(tokensBefore, chunk.tokens.size());
+        }
+        invokeAll(pool, shifts);
+        List<Token> tokens = new ArrayList<>(tokensBefore);
+        for (Chunk chunk : chunks) {
+            tokens.addAll(chunk.tokens);
+        }
+        return tokens;
+    }
+
+    private static void invokeAll(ForkJoinPool pool, List<Callable<Chunk>> tasks) throws InterruptedException {
+        try {
+            for (Future<Chunk> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            // Chunk.scan records its own errors, anything else is a bug
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Chunk boundaries: 0, up to chunks - 1 cuts close to equal shares of the file, and size
+    static long[] cuts(FileChannel channel, long size, int chunks) throws IOException {
+        long[] cuts = new long[chunks + 1];
+        int count = 1;
+        ByteBuffer buffer = ByteBuffer.allocate(NEWLINE_SEARCH);
+        for (int i = 1; i < chunks; i++) {
+            long target = size / chunks * i;
+            long previous = cuts[count - 1];
+            if (target <= previous) {
+                continue;
+            }
+            long cut = afterNewline(channel, buffer, target, size);
+            if (cut < 0) {
+                cut = outsideLiteral(channel, buffer, previous, target, size);
+            }
+            if (cut > previous && cut < size) {
+                cuts[count++] = cut;
+            }
+        }
+        cuts[count++] = size;
+        return Arrays.copyOf(cuts, count);
+    }
+
+    // Position after the first newline in the NEWLINE_SEARCH bytes from target, -1 if none
+    private static long afterNewline(FileChannel channel, ByteBuffer buffer, long target, long size) throws IOException {
+        int length = read(channel, buffer, target, size);
+        for (int k = 0; k < length; k++) {
+            if (buffer.get(k) == '\n') {
+                return target + k + 1;
+            }
+        }
+        return -1;
+    }
+
+    // First whitespace at or after target that is not inside a text literal, found by
+    // following the literals from from, which must be outside one; -1 if there is none
+    private static long outsideLiteral(FileChannel channel, ByteBuffer buffer, long from, long target, long size)
+            throws IOException {
+        boolean inLiteral = false;
+        for (long position = from; position < size; ) {
+            int length = read(channel, buffer, position, size);
+            for (int k = 0; k < length; k++) {
+                byte b = buffer.get(k);
+                if (inLiteral) {
+                    // The scanner ends an unterminated literal before the line break
+                    inLiteral = b != '"' && b != '\n' && b != '\r';
+                    if (inLiteral || b == '"') {
+                        continue;
+                    }
+                } else if (b == '"') {
+                    inLiteral = true;
+                    continue;
+                }
+                if (position + k >= target && MappedSourceScanner.isWhitespace(b)) {
+                    return position + k;
+                }
+            }
+            position += length;
+        }
+        return -1;
+    }
+
+    // Read up to a buffer of bytes at position, returns how many were read
+    private static int read(FileChannel channel, ByteBuffer buffer, long position, long size) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), size - position));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Structured trace of the parsers. An event is a handful of ints (event code, symbol id,
+// token index, node UNID and one event specific value) and is only turned into text
+// when a sink prints it, so emitting one builds no Strings.
+//
+// The level is read once from -Drecspl.trace=off|debug|trace and kept in a static final
+// field: with the default "off" every emit method returns immediately and the JIT drops
+// the call. When tracing is on, events go to a ring buffer of the last
+// -Drecspl.trace.buffer events (default 4096) that the parsers dump to stderr on a syntax
+// error. -Drecspl.trace.console=true also prints every event as it happens.
+final class ParserTrace {
+    static final int OFF = 0;
+    static final int DEBUG = 1;
+    static final int TRACE = 2;
+    static final int LEVEL = level(System.getProperty("recspl.trace", "off"));
+
+    // Event codes
+    static final int REACHED_TERMINAL = 0;
+    static final int ADDED_TEMP_NODE = 1;
+    static final int MATCHED_TEMP_NODE = 2;
+    static final int FAILED_TEMP_NODE = 3;
+    static final int MATCHED_PRODUCTION = 4;
+    static final int NULLABLE_CHECK = 5;
+    static final int PREDICTED_PRODUCTION = 6;
+
+    private static final String[] EVENT_NAMES = {
+        "Reached terminal symbol", "Adding inner node", "Matched temp node", "Failed to match temp node",
+        "Matched non terminal production", "isNullable", "Predicted production"
+    };
+
+    // Receives every event at or below the configured level. For the production events
+    // value is the index of the production among the productions of symbol.
+    interface Sink {
+        void event(int level, int event, int symbol, int tokenIndex, int node, int value);
+    }
+
+    private final SymbolTable symbols;
+    private final int[][][] productions;
+    private final List<Token> tokens;
+    private final List<Sink> sinks = new ArrayList<>();
+    private final RingBuffer ring;
+
+    ParserTrace(SymbolTable symbols, int[][][] productions, List<Token> tokens) {
+        this.symbols = symbols;
+        this.productions = productions;
+        this.tokens = tokens;
+        if (LEVEL > OFF) {
+            ring = new RingBuffer(Integer.getInteger("recspl.trace.buffer", 4096));
+            sinks.add(ring);
+            if (Boolean.getBoolean("recspl.trace.console")) {
+                sinks.add(new PrintSink(System.err));
+            }
+        } else {
+            ring = null;
+        }
+    }
+
+    private static int level(String name) {
+        switch (name.toLowerCase()) {
+            case "debug": return DEBUG;
+            case "trace": return TRACE;
+            default: return OFF;
+        }
+    }
+
+    void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+
+    void debug(int event, int symbol, int tokenIndex, int node, int value) {
+        if (LEVEL >= DEBUG) {
+            emit(DEBUG, event, symbol, tokenIndex, node, value);
+        }
+    }
+
+    void trace(int event, int symbol, int tokenIndex, int node, int value) {
+        if (LEVEL >= TRACE) {
+            emit(TRACE, event, symbol, tokenIndex, node, value);
+        }
+    }
+
+    private void emit(int level, int event, int symbol, int tokenIndex, int node, int value) {
+        for (int i = 0; i < sinks.size(); i++) {
+            sinks.get(i).event(level, event, symbol, tokenIndex, node, value);
+        }
+    }
+
+    // Print the buffered events, oldest first. Does nothing when tracing is off.
+    void dump(PrintStream out) {
+        if (ring == null) {
+            return;
+        }
+        out.println("Last " + ring.size() + " parser trace events:");
+        ring.replay(new PrintSink(out));
+    }
+
+    // Text of one event, e.g. "Matched temp node: VNAME token x currentTokenIndex: 12 node: 40"
+    String format(int event, int symbol, int tokenIndex, int node, int value) {
+        StringBuilder text = new StringBuilder(EVENT_NAMES[event]).append(": ");
+        text.append(symbols.name(symbol));
+        if (event == MATCHED_PRODUCTION || event == PREDICTED_PRODUCTION) {
+            text.append(" ->");
+            for (int child : productions[symbol][value]) {
+                text.append(' ').append(symbols.name(child));
+            }
+        }
+        text.append(" token ").append(tokenIndex < tokens.size() ? tokens.get(tokenIndex).word : "<end>");
+        text.append(" currentTokenIndex: ").append(tokenIndex);
+        if (node >= 0) {
+            text.append(" node: ").append(node);
+        }
+        return text.toString();
+    }
+
+    // Sink that formats every event as one line
+    final class PrintSink implements Sink {
+        private final Appendable out;
+
+        PrintSink(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        public void event(int level, int event, int symbol, int tokenIndex, int node, int value) {
+            try {
+                out.append(format(event, symbol, tokenIndex, node, value)).append('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Keeps the most recent events as packed int records and overwrites the oldest
+    static final class RingBuffer implements Sink {
+        private static final int RECORD = 6;
+
+        private final int[] events;
+        private final int capacity;
+        private long written;
+
+        RingBuffer(int capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.events = new int[this.capacity * RECORD];
+        }
+
+        @Override
+        public void event(int level, int event, int symbol, int tokenIndex, int node, int value) {
+            int at = (int) (written++ % capacity) * RECORD;
+            events[at] = level;
+            events[at + 1] = event;
+            events[at + 2] = symbol;
+            events[at + 3] = tokenIndex;
+            events[at + 4] = node;
+            events[at + 5] = value;
+        }
+
+        int size() {
+            return (int) Math.min(written, capacity);
+        }
+
+        // Send the buffered events to another sink, oldest first
+        void replay(Sink sink) {
+            for (long i = written - size(); i < written; i++) {
+                int at = (int) (i % capacity) * RECORD;
+                sink.event(events[at], events[at + 1], events[at + 2], events[at + 3], events[at + 4], events[at + 5]);
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// LL(1) parse table over int symbol ids, computed once from the grammar.
+// FIRST and FOLLOW are computed as bitsets indexed by terminal index and every
+// (non-terminal, terminal) pair maps to the production to expand.
+//
+// The grammar is LL(1) except for ASSIGN (VNAME < input | VNAME = TERM) and
+// COND (SIMPLE | COMPOSIT). Those cells are marked as conflicts and resolved by
+// comparing the next few tokens with the FIRST_k sequences of each candidate.
+final class PredictiveTable {
+    static final int ERROR = -1;
+    // Longest lookahead used to resolve a conflict cell
+    static final int MAX_LOOKAHEAD = 3;
+
+    final SymbolTable symbols;
+    private final int start;
+    private final int terminalCount;
+
+    private final int[][] productions;
+    private final int[] lhs;
+    // Position of each production among the productions of its non-terminal
+    private final int[] alternatives;
+    private final boolean[] nullable;
+    private final BitSet[] first;
+    private final BitSet[] follow;
+
+    // table[nonTerminal * terminalCount + terminal] holds a production, ERROR,
+    // or -(conflict + 2) for a cell that needs more than one token of lookahead
+    private final int[] table;
+    private final List<int[]> conflicts = new ArrayList<>();
+    // Packed FIRST_k sequences of each production that takes part in a conflict
+    private final int[][] lookaheadSequences;
+
+    // productionsByNonTerminal[A] holds the right-hand sides of A as symbol ids
+    PredictiveTable(SymbolTable symbols, int[][][] productionsByNonTerminal, int startSymbol) {
+        this.symbols = symbols;
+        this.start = startSymbol;
+        this.terminalCount = symbols.terminalCount();
+        int nonTerminals = symbols.nonTerminalCount();
+
+        List<int[]> rhs = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        for (int nonTerminal = 0; nonTerminal < nonTerminals; nonTerminal++) {
+            for (int[] production : productionsByNonTerminal[nonTerminal]) {
+                rhs.add(production);
+                owners.add(nonTerminal);
+            }
+        }
+        productions = rhs.toArray(new int[0][]);
+        lhs = new int[productions.length];
+        alternatives = new int[productions.length];
+        for (int p = 0; p < lhs.length; p++) {
+            lhs[p] = owners.get(p);
+            alternatives[p] = p > 0 && lhs[p - 1] == lhs[p] ? alternatives[p - 1] + 1 : 0;
+        }
+
+        nullable = new boolean[nonTerminals];
+        first = new BitSet[nonTerminals];
+        follow = new BitSet[nonTerminals];
+        for (int i = 0; i < nonTerminals; i++) {
+            first[i] = new BitSet(terminalCount);
+            follow[i] = new BitSet(terminalCount);
+        }
+        computeFirstSets();
+        computeFollowSets();
+
+        table = new int[nonTerminals * terminalCount];
+        Arrays.fill(table, ERROR);
+        lookaheadSequences = new int[productions.length][];
+        buildTable();
+    }
+
+    private void computeFirstSets() {
+        boolean changed;
+        do {
+            changed = false;
+            for (int p = 0; p < productions.length; p++) {
+                int owner = lhs[p];
+                BitSet before = (BitSet) first[owner].clone();
+                if (firstOf(productions[p], 0, first[owner]) && !nullable[owner]) {
+                    nullable[owner] = true;
+                    changed = true;
+                }
+                if (!first[owner].equals(before)) {
+                    changed = true;
+                }
+            }
+        } while (changed);
+    }
+
+    // Adds FIRST(symbols[from..]) to the set, returns true if that suffix is nullable
+    private boolean firstOf(int[] sequence, int from, BitSet into) {
+        for (int i = from; i < sequence.length; i++) {
+            int symbol = sequence[i];
+            if (symbols.isTerminal(symbol)) {
+                into.set(symbols.terminalIndex(symbol));
+                return false;
+            }
+            into.or(first[symbol]);
+            if (!nullable[symbol]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void computeFollowSets() {
+        follow[start].set(symbols.terminalIndex(symbols.endOfInput()));
+        boolean changed;
+        do {
+            changed = false;
+            for (int p = 0; p < productions.length; p++) {
+                int[] production = productions[p];
+                for (int i = 0; i < production.length; i++) {
+                    int symbol = production[i];
+                    if (symbols.isTerminal(symbol)) {
+                        continue;
+                    }
+                    BitSet before = (BitSet) follow[symbol].clone();
+                    if (firstOf(production, i + 1, follow[symbol])) {
+                        follow[symbol].or(follow[lhs[p]]);
+                    }
+                    if (!follow[symbol].equals(before)) {
+                        changed = true;
+                    }
+                }
+            }
+        } while (changed);
+    }
+
+    private void buildTable() {
+        List<Set<Integer>> cellCandidates = new ArrayList<>();
+        for (int p = 0; p < productions.length; p++) {
+            BitSet predict = new BitSet(terminalCount);
+            if (firstOf(productions[p], 0, predict)) {
+                predict.or(follow[lhs[p]]);
+            }
+            for (int t = predict.nextSetBit(0); t >= 0; t = predict.nextSetBit(t + 1)) {
+                int cell = lhs[p] * terminalCount + t;
+                if (table[cell] == ERROR) {
+                    table[cell] = p;
+                } else if (table[cell] >= 0) {
+                    Set<Integer> candidates = new LinkedHashSet<>();
+                    candidates.add(table[cell]);
+                    candidates.add(p);
+                    table[cell] = -(cellCandidates.size() + 2);
+                    cellCandidates.add(candidates);
+                } else {
+                    cellCandidates.get(-table[cell] - 2).add(p);
+                }
+            }
+        }
+        if (cellCandidates.isEmpty()) {
+            return;
+        }
+        List<Set<Integer>> firstK = computeFirstKSets();
+        for (Set<Integer> candidates : cellCandidates) {
+            int[] cell = new int[candidates.size()];
+            int i = 0;
+            for (int p : candidates) {
+                cell[i++] = p;
+                if (lookaheadSequences[p] == null) {
+                    Set<Integer> sequences = concatFirstK(productions[p], firstK);
+                    lookaheadSequences[p] = sequences.stream().mapToInt(Integer::intValue).toArray();
+                }
+            }
+            conflicts.add(cell);
+        }
+    }
+
+    // FIRST_k of every non-terminal as packed terminal sequences, see pack()
+    private List<Set<Integer>> computeFirstKSets() {
+        List<Set<Integer>> firstK = new ArrayList<>();
+        for (int i = 0; i < symbols.nonTerminalCount(); i++) {
+            firstK.add(new HashSet<>());
+        }
+        boolean changed;
+        do {
+            changed = false;
+            for (int p = 0; p < productions.length; p++) {
+                if (firstK.get(lhs[p]).addAll(concatFirstK(productions[p], firstK))) {
+                    changed = true;
+                }
+            }
+        } while (changed);
+        return firstK;
+    }
+
+    private Set<Integer> concatFirstK(int[] production, List<Set<Integer>> firstK) {
+        Set<Integer> current = new HashSet<>();
+        current.add(0);
+        for (int symbol : production) {
+            Set<Integer> next = new HashSet<>();
+            for (int prefix : current) {
+                int length = length(prefix);
+                if (length == MAX_LOOKAHEAD) {
+                    next.add(prefix);
+                } else if (symbols.isTerminal(symbol)) {
+                    next.add(prefix | pack(symbols.terminalIndex(symbol), length));
+                } else {
+                    for (int suffix : firstK.get(symbol)) {
+                        next.add(concat(prefix, length, suffix));
+                    }
+                }
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    // A packed sequence stores terminal index + 1 in successive bytes, 0 ends the sequence
+    private static int pack(int terminal, int position) {
+        return (terminal + 1) << (8 * position);
+    }
+
+    private static int length(int sequence) {
+        int length = 0;
+        while (length < MAX_LOOKAHEAD && (sequence >>> (8 * length) & 0xFF) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int concat(int prefix, int prefixLength, int suffix) {
+        int result = prefix;
+        for (int i = 0; prefixLength + i < MAX_LOOKAHEAD && (suffix >>> (8 * i) & 0xFF) != 0; i++) {
+            result |= (suffix >>> (8 * i) & 0xFF) << (8 * (prefixLength + i));
+        }
+        return result;
+    }
+
+    int startSymbol() {
+        return start;
+    }
+
+    int[] production(int p) {
+        return productions[p];
+    }
+
+    // Index of production p within productionsByNonTerminal[lhs]
+    int alternative(int p) {
+        return alternatives[p];
+    }
+
+    // Production to expand for a non-terminal given the terminal indices of the remaining
+    // tokens (lookahead[position] up to lookahead[length - 1], past that counts as end of
+    // input, -1 marks a token that is not a terminal of the grammar), or ERROR
+    int predict(int nonTerminal, int[] lookahead, int length, int position) {
+        int terminal = terminalAt(lookahead, length, position);
+        if (terminal < 0) {
+            return ERROR;
+        }
+        int cell = table[nonTerminal * terminalCount + terminal];
+        if (cell >= ERROR) {
+            return cell;
+        }
+        for (int p : conflicts.get(-cell - 2)) {
+            for (int sequence : lookaheadSequences[p]) {
+                if (matches(sequence, lookahead, length, position)) {
+                    return p;
+                }
+            }
+        }
+        return ERROR;
+    }
+
+    private boolean matches(int sequence, int[] lookahead, int length, int position) {
+        for (int i = 0; i < MAX_LOOKAHEAD; i++) {
+            int terminal = (sequence >>> (8 * i) & 0xFF) - 1;
+            if (terminal < 0) {
+                return true;
+            }
+            if (terminal != terminalAt(lookahead, length, position + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int terminalAt(int[] lookahead, int length, int position) {
+        return position < length ? lookahead[position] : symbols.terminalIndex(symbols.endOfInput());
+    }
+}
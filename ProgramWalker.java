@@ -0,0 +1,134 @@
+// Base of the passes over the Node tree of a whole program: SemanticAnalyzer,
+// BytecodeCompiler and TreeInterpreter. Holds the ids of the grammar symbols they look
+// for and the helpers that find children by symbol, so the passes work on the trees of
+// both parsers.
+abstract class ProgramWalker {
+    final SyntaxTree tree;
+    final SymbolTable symbols;
+
+    final int progId, globvarsId, vtypId, vnameId, algoId, instrucId, commandId, atomicId, constId;
+    final int assignId, callId, branchId, termId, argId, condId;
+    final int unopId, binopId, fnameId, functionsId, declId, headerId, ftypId, bodyId, locvarsId, subfuncsId;
+    final int numId, textId, voidId, printId, returnId, haltId, numberId, stringId;
+    final int notId, sqrtId, orId, andId, eqId, grtId, addId, subId, mulId, divId;
+
+    ProgramWalker(SyntaxTree tree) {
+        this.tree = tree;
+        this.symbols = tree.symbols();
+        progId = symbols.id("PROG");
+        globvarsId = symbols.id("GLOBVARS");
+        vtypId = symbols.id("VTYP");
+        vnameId = symbols.id("VNAME");
+        algoId = symbols.id("ALGO");
+        instrucId = symbols.id("INSTRUC");
+        commandId = symbols.id("COMMAND");
+        atomicId = symbols.id("ATOMIC");
+        constId = symbols.id("CONST");
+        assignId = symbols.id("ASSIGN");
+        callId = symbols.id("CALL");
+        branchId = symbols.id("BRANCH");
+        termId = symbols.id("TERM");
+        argId = symbols.id("ARG");
+        condId = symbols.id("COND");
+        unopId = symbols.id("UNOP");
+        binopId = symbols.id("BINOP");
+        fnameId = symbols.id("FNAME");
+        functionsId = symbols.id("FUNCTIONS");
+        declId = symbols.id("DECL");
+        headerId = symbols.id("HEADER");
+        ftypId = symbols.id("FTYP");
+        bodyId = symbols.id("BODY");
+        locvarsId = symbols.id("LOCVARS");
+        subfuncsId = symbols.id("SUBFUNCS");
+        numId = symbols.id("num");
+        textId = symbols.id("text");
+        voidId = symbols.id("void");
+        printId = symbols.id("print");
+        returnId = symbols.id("return");
+        haltId = symbols.id("halt");
+        numberId = symbols.id("N");
+        stringId = symbols.id("T");
+        notId = symbols.id("not");
+        sqrtId = symbols.id("sqrt");
+        orId = symbols.id("or");
+        andId = symbols.id("and");
+        eqId = symbols.id("eq");
+        grtId = symbols.id("grt");
+        addId = symbols.id("add");
+        subId = symbols.id("sub");
+        mulId = symbols.id("mul");
+        divId = symbols.id("div");
+    }
+
+    // The PROG node of the tree
+    Node program() {
+        Node prog = content(tree.getRoot());
+        if (prog.symbolId != progId) {
+            throw new IllegalArgumentException("Not a program: " + symbols.name(prog.symbolId));
+        }
+        return prog;
+    }
+
+    // The legacy parser wraps the node of a matched non-terminal in a tentative node with
+    // the same symbol; skip those to get to the node whose children are the production
+    static Node content(Node node) {
+        while (node != null && node.children.size() == 1) {
+            Node only = node.children.get(0);
+            if (only.isLeaf || only.symbolId != node.symbolId) {
+                break;
+            }
+            node = only;
+        }
+        return node;
+    }
+
+    // First child with the given symbol, after skipping count earlier ones, as content
+    static Node child(Node parent, int symbol, int count) {
+        if (parent == null) {
+            return null;
+        }
+        for (Node child : parent.children) {
+            if (child.symbolId == symbol && count-- == 0) {
+                return content(child);
+            }
+        }
+        return null;
+    }
+
+    static Node child(Node parent, int symbol) {
+        return child(parent, symbol, 0);
+    }
+
+    // First child whatever its symbol, as content
+    static Node firstChild(Node parent) {
+        return parent == null || parent.children.isEmpty() ? null : content(parent.children.get(0));
+    }
+
+    // The token leaf below a VNAME, FNAME, VTYP, FTYP, CONST or operator node
+    static Node leaf(Node node) {
+        while (node != null && !node.isLeaf) {
+            node = node.children.isEmpty() ? null : node.children.get(0);
+        }
+        return node;
+    }
+
+    // Operator leaf of an OP, SIMPLE or COMPOSIT node, null if it has none
+    Node operator(Node operation) {
+        for (Node child : operation.children) {
+            if (child.symbolId == unopId || child.symbolId == binopId) {
+                return leaf(child);
+            }
+        }
+        return null;
+    }
+
+    // The count-th operand (ARG, ATOMIC or SIMPLE) of an OP, SIMPLE or COMPOSIT node
+    Node operand(Node operation, int count) {
+        for (Node child : operation.children) {
+            if (!child.isLeaf && child.symbolId != unopId && child.symbolId != binopId && count-- == 0) {
+                return content(child);
+            }
+        }
+        return null;
+    }
+}
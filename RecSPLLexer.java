@@ -1,84 +1,203 @@
 import java.io.*;
-import java.util.regex.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 public class RecSPLLexer {
 
-    // Token class to store the information of each token
-    static class Token {
-        int id;
-        String tokenClass;
-        String word;
+    // Receives tokens as the lexer produces them
+    interface TokenSink {
+        void accept(Token token) throws IOException;
+    }
+
+    // Error handling for lexical errors
+    private static void throwLexicalError(String message) throws Exception {
+        throw new Exception("Lexical Error: " + message);
+    }
 
-        public Token(int id, String tokenClass, String word) {
-            this.id = id;
-            this.tokenClass = tokenClass;
-            this.word = word;
+    // Main lexer function to tokenize input and store it as XML
+    public static void lex(String inputFileName, String outputFileName) throws Exception {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFileName))) {
+            writer.write("<TOKENSTREAM>\n");
+            scanLines(inputFileName, tok -> writer.write(tok.toXML() + "\n"));
+            writer.write("</TOKENSTREAM>");
         }
+    }
 
-        // Convert the token to XML format
-        public String toXML() {
-            return "<TOK>\n" + "\t<ID>" + id + "</ID>\n" + "\t<CLASS>" + tokenClass + "</CLASS>\n" + "\t<WORD>" + word + "</WORD>\n" + "</TOK>";
+    // Lexer mode that scans the memory-mapped bytes of the input directly, so tokens
+    // do not need to be separated by whitespace and no per-line Strings are created
+    public static void lexMapped(String inputFileName, String outputFileName) throws Exception {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFileName))) {
+            writer.write("<TOKENSTREAM>\n");
+            scanMapped(inputFileName, tok -> writer.write(tok.toXML() + "\n"));
+            writer.write("</TOKENSTREAM>");
         }
     }
 
-    private static int tokenId = 0;
+    // Tokenize the input in memory so it can be handed straight to RecSPLParser
+    public static List<Token> tokenize(String inputFileName) throws Exception {
+        List<Token> tokens = new ArrayList<>();
+        scanLines(inputFileName, tokens::add);
+        return tokens;
+    }
 
-    // Regular expressions for different token classes
-    private static final String VARIABLE_REGEX = "V_[a-z]([a-z]|[0-9])*";
-    private static final String FUNCTION_REGEX = "F_[a-z]([a-z]|[0-9])*";
-    private static final String TEXT_REGEX = "\"[A-Z][a-z]{1,7}\"";
-    private static final String NUMBER_REGEX = "-?[0-9]+(\\.[0-9]+)?";
-    private static final String RESERVED_KEYWORDS_REGEX = "(main|begin|end|if|then|else|halt|print|skip|input|output|return|num|text|void|call|add|sub|mul|div|eq|grt|and|or|not|sqrt|=|<|\\(|\\)|\\{|\\}|,|;)";
+    // Same as tokenize but using the memory-mapped scanner
+    public static List<Token> tokenizeMapped(String inputFileName) throws Exception {
+        List<Token> tokens = new ArrayList<>();
+        scanMapped(inputFileName, tokens::add);
+        return tokens;
+    }
 
-    // Error handling for lexical errors
-    private static void throwLexicalError(String message) throws Exception {
-        throw new Exception("Lexical Error: " + message);
+    // Same as tokenizeMapped, with the file cut into chunks that are lexed concurrently
+    public static List<Token> tokenizeParallel(String inputFileName) throws Exception {
+        return ParallelLexer.tokenize(inputFileName, ForkJoinPool.commonPool());
     }
 
-    // Main lexer function to tokenize input and store it as XML
-    public static void lex(String inputFileName, String outputFileName) throws Exception {
-        BufferedReader reader = new BufferedReader(new FileReader(inputFileName));
-        BufferedWriter writer = new BufferedWriter(new FileWriter(outputFileName));
-        
-        writer.write("<TOKENSTREAM>\n");
-
-        String line;
-        while ((line = reader.readLine()) != null) {
-            String[] tokens = line.split("\\s+");
-            for (String token : tokens) {
-                Token tok = identifyToken(token);
+    public static List<Token> tokenizeParallel(String inputFileName, ForkJoinPool pool) throws Exception {
+        return ParallelLexer.tokenize(inputFileName, pool);
+    }
+
+    public static void lexParallel(String inputFileName, String outputFileName) throws Exception {
+        writeTokenStream(tokenizeParallel(inputFileName), outputFileName);
+    }
+
+    // Lex on a new daemon thread into the queue, which is closed at the end of the input
+    // or failed with the lexical error, so a parser can consume tokens as they are found
+    public static Thread lexAsync(String inputFileName, TokenQueue queue) {
+        return lexAsync(inputFileName, queue, new CompileMetrics(inputFileName));
+    }
+
+    // Same, timing the lex phase on the lexer thread into metrics
+    public static Thread lexAsync(String inputFileName, TokenQueue queue, CompileMetrics metrics) {
+        Thread thread = new Thread(() -> {
+            try {
+                CompileMetrics.PhaseEvent phase = metrics.begin(CompileMetrics.LEX);
+                scanLines(inputFileName, queue);
+                metrics.end(phase);
+                queue.close();
+            } catch (CancellationException e) {
+                // The parser stopped early and cancelled the queue
+            } catch (Exception e) {
+                queue.fail(e);
+            }
+        }, "lexer");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // Write an already lexed token list as a TOKENSTREAM XML file
+    public static void writeTokenStream(List<Token> tokens, String outputFileName) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFileName))) {
+            writer.write("<TOKENSTREAM>\n");
+            for (Token tok : tokens) {
                 writer.write(tok.toXML() + "\n");
             }
+            writer.write("</TOKENSTREAM>");
+        }
+    }
+
+    // Write an already lexed token list in the compact binary format described in BinaryTokenStream
+    public static void writeBinaryTokenStream(List<Token> tokens, String outputFileName) throws IOException {
+        // First pass: build the string pool and remember each token's pool index
+        Map<String, Integer> poolIndex = new HashMap<>();
+        List<String> pool = new ArrayList<>();
+        int[] wordIndex = new int[tokens.size()];
+        boolean consecutiveIds = true;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token tok = tokens.get(i);
+            Integer index = poolIndex.get(tok.word);
+            if (index == null) {
+                index = pool.size();
+                poolIndex.put(tok.word, index);
+                pool.add(tok.word);
+            }
+            wordIndex[i] = index;
+            if (i > 0 && tok.id != tokens.get(i - 1).id + 1) {
+                consecutiveIds = false;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFileName)))) {
+            out.writeInt(BinaryTokenStream.MAGIC);
+            out.writeShort(BinaryTokenStream.VERSION);
+            out.writeShort(consecutiveIds ? 0 : BinaryTokenStream.FLAG_EXPLICIT_IDS);
+            out.writeInt(tokens.size());
+            out.writeInt(pool.size());
+            out.writeInt(tokens.isEmpty() ? 0 : tokens.get(0).id);
+            for (String word : pool) {
+                byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+                BinaryTokenStream.writeVarint(out, bytes.length);
+                out.write(bytes);
+            }
+            int previousId = tokens.isEmpty() ? 0 : tokens.get(0).id - 1;
+            for (int i = 0; i < tokens.size(); i++) {
+                Token tok = tokens.get(i);
+                BinaryTokenStream.writeVarint(out, BinaryTokenStream.classCode(tok.tokenClass));
+                BinaryTokenStream.writeVarint(out, wordIndex[i]);
+                if (!consecutiveIds) {
+                    BinaryTokenStream.writeVarint(out, BinaryTokenStream.zigzag(tok.id - previousId - 1));
+                }
+                previousId = tok.id;
+            }
         }
+    }
 
-        writer.write("</TOKENSTREAM>");
-        writer.close();
-        reader.close();
-    }
-
-    // Identify the type of token based on the regular expressions
-    private static Token identifyToken(String word) throws Exception {
-        tokenId++;
-
-        if (word.matches(VARIABLE_REGEX)) {
-            return new Token(tokenId, "V", word);
-        } else if (word.matches(FUNCTION_REGEX)) {
-            return new Token(tokenId, "F", word);
-        } else if (word.matches(TEXT_REGEX)) {
-            return new Token(tokenId, "T", word);
-        } else if (word.matches(NUMBER_REGEX)) {
-            return new Token(tokenId, "N", word);
-        } else if (word.matches(RESERVED_KEYWORDS_REGEX)) {
-            return new Token(tokenId, "reserved_keyword", word);
-        } else {
+    private static void scanLines(String inputFileName, TokenSink sink) throws Exception {
+        try (BufferedReader reader = new BufferedReader(new FileReader(inputFileName))) {
+            // Token ids are numbered per scan, so concurrent lexes do not share a counter
+            int tokenId = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split("\\s+");
+                for (String token : tokens) {
+                    sink.accept(identifyToken(++tokenId, token));
+                }
+            }
+        }
+    }
+
+    private static void scanMapped(String inputFileName, TokenSink sink) throws Exception {
+        scanMapped(new MappedSourceScanner(inputFileName), sink);
+    }
+
+    // Token ids start at 1 for every scanner, ParallelLexer shifts those of later chunks
+    static void scanMapped(MappedSourceScanner source, TokenSink sink) throws Exception {
+        try (MappedSourceScanner scanner = source) {
+            int tokenId = 0;
+            while (scanner.next()) {
+                tokenId++;
+                int tokenClass = scanner.tokenClass();
+                if (tokenClass == TokenDFA.REJECT) {
+                    throwLexicalError("Unrecognized token: " + scanner.word());
+                }
+                sink.accept(new Token(tokenId, TokenDFA.className(tokenClass), scanner.word()));
+            }
+        }
+    }
+
+    // Identify the type of token with a single pass of the token DFA
+    private static Token identifyToken(int tokenId, String word) throws Exception {
+        int tokenClass = TokenDFA.classify(word);
+        if (tokenClass == TokenDFA.REJECT) {
             throwLexicalError("Unrecognized token: " + word);
-            return null; // Won't be reached due to exception
         }
+        return new Token(tokenId, TokenDFA.className(tokenClass), word);
     }
 
     public static void main(String[] args) {
         try {
-            lex("input.txt", "output.xml");
+            if (args.length > 0 && args[0].equals("--mapped")) {
+                lexMapped("input.txt", "output.xml");
+            } else if (args.length > 0 && args[0].equals("--parallel")) {
+                lexParallel("input.txt", "output.xml");
+            } else {
+                lex("input.txt", "output.xml");
+            }
             System.out.println("Lexing completed. XML output generated.");
         } catch (Exception e) {
             System.err.println(e.getMessage());
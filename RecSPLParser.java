@@ -1,54 +1,234 @@
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap; 
+import java.util.BitSet;
 import java.util.Arrays; 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import java.util.ArrayList;
 import java.io.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 
 class RecSPLParser {
-    // Token class to store the information of each token
-    static class Token {
-        int id;
-        String tokenClass;
-        String word;
-
-        public Token(int id, String tokenClass, String word) {
-            this.id = id;
-            this.tokenClass = tokenClass;
-            this.word = word;
-        }
-
-        // Convert the token to XML format
-        public String toXML() {
-            return "<TOK>\n" + "\t<ID>" + id + "</ID>\n" + "\t<CLASS>" + tokenClass + "</CLASS>\n" + "\t<WORD>" + word + "</WORD>\n" + "</TOK>";
-        }
-    }
-    private Map<String, List<List<String>>> grammar;
-    private SyntaxTree syntaxTree;
+    // Grammar tables shared by all parsers
+    private final GrammarSnapshot grammar;
+    private SyntaxTreeBackend syntaxTree;
+    // Build into ArenaSyntaxTree instead of Node objects
+    private boolean arenaTree;
     private int currentTokenIndex;
     private List<Token> tokens;
-    private Map<String, Set<String>> firstSets;
+    // Tokens still being produced by a lexer thread, null once the input is complete
+    private TokenQueue pendingTokens;
+    // Terminal indices of the next MAX_LOOKAHEAD tokens for the predictive parser
+    private final int[] lookahead = new int[PredictiveTable.MAX_LOOKAHEAD];
+    private BitSet[] firstSets;
+    private SymbolTable symbols;
+    // Productions of each non-terminal as arrays of symbol ids
+    private int[][][] productions;
+    // Ids of the symbols the parser refers to by name
+    private int progId, globvarsId, instrucId, subfuncsId, assignId;
+    private int variableId, lessThanId, equalsId, beginId, endId;
+    // Terminals that can be reached from each symbol, indexed by symbol id then terminal index
+    private BitSet[] reachableTerminals;
     private int nodeId = 0;
+    private PredictiveTable predictiveTable;
+    private ParserTrace trace;
+    private CompileMetrics metrics;
+    // Token streams larger than this are read with StAX instead of being loaded into a DOM
+    static final long STREAMING_THRESHOLD_BYTES = 1 << 20;
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
 
     public RecSPLParser(String xmlFilePath) {
-        this.tokens = new ArrayList<>();;
+        this(xmlFilePath, new CompileMetrics(xmlFilePath));
+    }
+    private RecSPLParser(String xmlFilePath, CompileMetrics metrics) {
+        this(readTokenStream(xmlFilePath, metrics), metrics);
+    }
+
+    // Parse tokens handed over directly from RecSPLLexer, without an XML round trip
+    public RecSPLParser(List<Token> tokens) {
+        this(tokens, new CompileMetrics(null));
+    }
+    // Same, timing the grammar setup and the parse into metrics
+    public RecSPLParser(List<Token> tokens, CompileMetrics metrics) {
+        this.tokens = tokens;
+        this.currentTokenIndex = 0;
+        this.metrics = metrics;
+        // Only the first parser in the JVM builds the grammar snapshot, the rest reuse it
+        CompileMetrics.PhaseEvent phase = metrics.begin(CompileMetrics.INITIALIZE_GRAMMAR);
+        this.grammar = GrammarSnapshot.recspl();
+        metrics.end(phase);
+        symbols = grammar.symbols;
+        productions = grammar.productions;
+        firstSets = grammar.firstSets;
+        reachableTerminals = grammar.reachableTerminals;
+        resolveSymbols();
+        internTokens(0, tokens.size());
+        trace = new ParserTrace(symbols, productions, tokens);
+    }
+
+    // Reuse this parser and its compiled grammar and tables for another token list
+    public void reset(List<Token> tokens) {
+        reset(tokens, 0, tokens.size());
+    }
+    // Same, when only tokens[internFrom, internTo) are new and the rest came from this parser
+    public void reset(List<Token> tokens, int internFrom, int internTo) {
+        this.tokens = tokens;
+        this.pendingTokens = null;
         this.currentTokenIndex = 0;
-        this.grammar = new HashMap<>();
-        parseXMLFile(xmlFilePath);
-        // Initialize grammar rules
-        initializeGrammar();
-        // Compute first sets(we will use this to prune the parse tree)
-        firstSets = computeFirstSets(grammar);
-    }
-    private void parseXMLFile(String xmlFilePath) {
+        this.nodeId = 0;
+        this.syntaxTree = null;
+        internTokens(internFrom, internTo);
+        trace = new ParserTrace(symbols, productions, tokens);
+        metrics = new CompileMetrics(null);
+    }
+
+    // Parse tokens while RecSPLLexer is still producing them on another thread
+    public RecSPLParser(TokenQueue pendingTokens) {
+        this(pendingTokens, new CompileMetrics(null));
+    }
+    public RecSPLParser(TokenQueue pendingTokens, CompileMetrics metrics) {
+        this(new ArrayList<>(), metrics);
+        this.pendingTokens = pendingTokens;
+    }
+    // Timers and counters of the current parse; reset() starts a new set
+    public CompileMetrics metrics() {
+        return metrics;
+    }
+    // Canonical text of the grammar, one line per non-terminal. Anything derived from a
+    // parse, such as a cached tree, is only valid for the grammar that produced it.
+    public String describeGrammar() {
+        StringBuilder text = new StringBuilder();
+        for (int nonTerminal = 0; nonTerminal < productions.length; nonTerminal++) {
+            text.append(symbols.name(nonTerminal)).append(" ::=");
+            for (int[] production : productions[nonTerminal]) {
+                text.append(" |");
+                for (int symbol : production) {
+                    text.append(' ').append(symbols.name(symbol));
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+    // Ids of the symbols the parser refers to by name
+    private void resolveSymbols() {
+        progId = symbols.id("PROG");
+        globvarsId = symbols.id("GLOBVARS");
+        instrucId = symbols.id("INSTRUC");
+        subfuncsId = symbols.id("SUBFUNCS");
+        assignId = symbols.id("ASSIGN");
+        variableId = symbols.id("V");
+        lessThanId = symbols.id("<");
+        equalsId = symbols.id("=");
+        beginId = symbols.id("begin");
+        endId = symbols.id("end");
+    }
+    // Resolve each token's terminal once, when the token stream is handed over
+    private void internTokens(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Token token = tokens.get(i);
+            int terminal = symbols.id(getTokenWord(token));
+            token.symbolId = terminal >= 0 && symbols.isTerminal(terminal) ? terminal : -1;
+            token.wordId = symbols.id(token.word);
+        }
+    }
+    // True if the token at index exists. Tokens from a lexer thread are taken from the
+    // queue and interned until the index is reached or the input ends.
+    private boolean hasToken(int index) {
+        while (index >= tokens.size() && pendingTokens != null) {
+            int from = tokens.size();
+            if (pendingTokens.drainTo(tokens) == 0) {
+                pendingTokens = null;
+            }
+            internTokens(from, tokens.size());
+        }
+        return index < tokens.size();
+    }
+    private Token token(int index) {
+        hasToken(index);
+        return tokens.get(index);
+    }
+    // Wait for the rest of the input and return every token, including any the parse did not reach
+    public List<Token> finishInput() {
+        hasToken(Integer.MAX_VALUE);
+        metrics.tokens = tokens.size();
+        return tokens;
+    }
+    // Load a stored token stream, either TOKENSTREAM XML or the binary format
+    static List<Token> readTokenStream(String filePath) {
+        try {
+            if (BinaryTokenStream.isBinary(filePath)) {
+                return readBinaryTokenStream(filePath);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+        return parseXMLFile(filePath);
+    }
+    private static List<Token> readTokenStream(String filePath, CompileMetrics metrics) {
+        CompileMetrics.PhaseEvent phase = metrics.begin(CompileMetrics.READ_TOKENS);
+        List<Token> tokens = readTokenStream(filePath);
+        metrics.end(phase);
+        metrics.tokens = tokens.size();
+        return tokens;
+    }
+    // Decode the binary token stream straight from a read-only mapping of the file.
+    // Each distinct lexeme becomes one String that all of its tokens share.
+    static List<Token> readBinaryTokenStream(String filePath) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r");
+             FileChannel channel = file.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binary token stream too large: " + filePath);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < BinaryTokenStream.HEADER_SIZE || buffer.getInt() != BinaryTokenStream.MAGIC) {
+                throw new IOException("Not a binary token stream: " + filePath);
+            }
+            short version = buffer.getShort();
+            if (version != BinaryTokenStream.VERSION) {
+                throw new IOException("Unsupported binary token stream version " + version);
+            }
+            boolean explicitIds = (buffer.getShort() & BinaryTokenStream.FLAG_EXPLICIT_IDS) != 0;
+            int tokenCount = buffer.getInt();
+            int poolSize = buffer.getInt();
+            int id = buffer.getInt() - 1;
+
+            String[] pool = new String[poolSize];
+            for (int i = 0; i < poolSize; i++) {
+                int length = BinaryTokenStream.readVarint(buffer);
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                pool[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            List<Token> tokens = new ArrayList<>(tokenCount);
+            for (int i = 0; i < tokenCount; i++) {
+                String tokenClass = TokenDFA.className(BinaryTokenStream.readVarint(buffer));
+                String word = pool[BinaryTokenStream.readVarint(buffer)];
+                id += explicitIds ? BinaryTokenStream.unzigzag(BinaryTokenStream.readVarint(buffer)) + 1 : 1;
+                tokens.add(new Token(id, tokenClass, word));
+            }
+            return tokens;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt binary token stream: " + filePath, e);
+        }
+    }
+    static List<Token> parseXMLFile(String xmlFilePath) {
+        if (new File(xmlFilePath).length() > STREAMING_THRESHOLD_BYTES) {
+            return parseXMLFileStreaming(xmlFilePath);
+        }
+        List<Token> tokens = new ArrayList<>();
         try {
             File inputFile = new File(xmlFilePath);
             DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
@@ -71,45 +251,43 @@ class RecSPLParser {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return tokens;
     }
-    private Map<String, Set<String>> computeFirstSets(Map<String, List<List<String>>> grammar) {
-        Map<String, Set<String>> firstSets = new HashMap<>();
-    
-        for (String nonTerminal : grammar.keySet()) {
-            firstSets.put(nonTerminal, new HashSet<>());
-        }
-    
-        boolean changed;
-        do {
-            changed = false;
-            for (String nonTerminal : grammar.keySet()) {
-                Set<String> firstSet = firstSets.get(nonTerminal);
-                for (List<String> production : grammar.get(nonTerminal)) {
-                    for (String symbol : production) {
-                        if (!grammar.containsKey(symbol)) { // Terminal
-                            if (firstSet.add(symbol)) {
-                                changed = true;
-                            }
-                            break;
-                        } else { // Non-terminal
-                            Set<String> symbolFirstSet = firstSets.get(symbol);
-                            int prevSize = firstSet.size();
-                            firstSet.addAll(symbolFirstSet);
-                            if (firstSet.size() > prevSize) {
-                                changed = true;
-                            }
-                            if (!symbolFirstSet.contains("")) {
-                                break;
-                            }
+    // Single forward pass over the TOKENSTREAM, only the current token's fields are held
+    static List<Token> parseXMLFileStreaming(String xmlFilePath) {
+        List<Token> tokens = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(xmlFilePath))) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+            try {
+                int id = 0;
+                String tokenClass = null;
+                String word = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if (name.equals("ID")) {
+                            id = Integer.parseInt(reader.getElementText());
+                        } else if (name.equals("CLASS")) {
+                            tokenClass = reader.getElementText();
+                        } else if (name.equals("WORD")) {
+                            word = reader.getElementText();
                         }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("TOK")) {
+                        tokens.add(new Token(id, tokenClass, word));
                     }
                 }
+            } finally {
+                reader.close();
             }
-        } while (changed);
-    
-        return firstSets;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return tokens;
     }
-    private void initializeGrammar() {
+    // The RecSPL grammar as written, compiled into GrammarSnapshot
+    static Map<String, List<List<String>>> grammarRules() {
+        Map<String, List<List<String>>> grammar = new HashMap<>();
         grammar.put("PROG", Arrays.asList(
             Arrays.asList("main", "GLOBVARS", "ALGO", "FUNCTIONS")
         ));
@@ -257,146 +435,381 @@ class RecSPLParser {
         grammar.put("SUBFUNCS", Arrays.asList( 
             Arrays.asList("FUNCTIONS")
         ));
+        return grammar;
     }
 
     public void parse() {
-        Node root = new Node(generateUNID(),-1, "PROG", false); // Start symbol is "PROG"
-        syntaxTree = new SyntaxTree(root); // Ensure syntaxTree is initialized
-        parseSymbol(root, "PROG", tokens.get(currentTokenIndex));
-    }
-    private boolean parseSymbol(Node parentNode, String symbol, Token currentToken) {
-        //System.out.println("parseSymbol: " + symbol + " token " + currentToken.word + " currentTokenIndex: " + currentTokenIndex);
-        if (!grammar.containsKey(symbol)) {
-            if (reachable(symbol, currentToken)) {
-                System.out.println("Reached terminal symbol: " + symbol + " token " + currentToken.word + " currentTokenIndex: " + currentTokenIndex);
-                System.out.println("Parent Node: " + parentNode.getSymbol()+" is leaf: "+parentNode.isLeaf());
-                if(parentNode.isLeaf()) {
-                    //already added leaf node
-                    currentTokenIndex++;
-                    return true;
+        CompileMetrics.PhaseEvent phase = metrics.begin(CompileMetrics.PARSE);
+        try {
+            int root = startTree(progId); // Start symbol is "PROG"
+            parseSymbol(root, progId, token(currentTokenIndex));
+        } finally {
+            parsed(phase);
+        }
+    }
+    // Stop the parse timer and take the counts, also after a syntax error
+    private void parsed(CompileMetrics.PhaseEvent phase) {
+        metrics.end(phase);
+        metrics.tokens = tokens.size();
+        metrics.nodesCreated = nodeId;
+        metrics.nodesRemoved = syntaxTree != null ? syntaxTree.removedNodes() : 0;
+    }
+    // Store the syntax tree in primitive arrays (ArenaSyntaxTree) rather than Node objects
+    public void setArenaTree(boolean arenaTree) {
+        this.arenaTree = arenaTree;
+    }
+    // Create the tree with its root node and return the root's UNID
+    private int startTree(int rootSymbol) {
+        int root = generateUNID();
+        if (arenaTree) {
+            syntaxTree = new ArenaSyntaxTree(root, rootSymbol, symbols, tokens);
+        } else {
+            syntaxTree = new SyntaxTree(new Node(root, -1, rootSymbol, false), symbols, tokens);
+        }
+        return root;
+    }
+    // Table-driven LL parse: every step is a lookup in the predictive table, so no
+    // tentative nodes are created and nothing is backtracked. Nodes are numbered in
+    // preorder and each non-terminal appears once in the tree.
+    public void parsePredictive() {
+        if (predictiveTable == null) {
+            predictiveTable = grammar.predictiveTable();
+        }
+        nodeId = 0;
+        currentTokenIndex = 0;
+        CompileMetrics.PhaseEvent phase = metrics.begin(CompileMetrics.PARSE);
+        try {
+            int start = predictiveTable.startSymbol();
+            expandPredictive(start, startTree(start), null);
+            if (hasToken(currentTokenIndex)) {
+                throw predictiveSyntaxError();
+            }
+        } finally {
+            parsed(phase);
+        }
+    }
+
+    // Lets a fragment parse stop early when the rest of it is already known
+    interface SubtreeReuse {
+        // Called when the non-terminal symbol, to become a child of parentNode, is all that
+        // is left to parse at token index position. Returning true ends the parse there.
+        boolean reuse(int symbol, int position, int parentNode);
+    }
+
+    // Predictively parse a single symbol starting at token `from` into a new Node based
+    // tree rooted at that symbol, stopping as soon as the symbol is complete. position()
+    // then tells how far it got. Used to re-parse part of a program after an edit.
+    public SyntaxTree parseFragment(int symbol, int from) {
+        return parseFragment(symbol, from, null);
+    }
+
+    public SyntaxTree parseFragment(int symbol, int from, SubtreeReuse reuse) {
+        if (predictiveTable == null) {
+            predictiveTable = grammar.predictiveTable();
+        }
+        nodeId = 0;
+        currentTokenIndex = from;
+        int root = generateUNID();
+        SyntaxTree fragment = new SyntaxTree(new Node(root, -1, symbol, false), symbols, tokens);
+        syntaxTree = fragment;
+        expandPredictive(symbol, root, reuse);
+        return fragment;
+    }
+
+    public int position() {
+        return currentTokenIndex;
+    }
+
+    public int startSymbol() {
+        return progId;
+    }
+
+    // Expand start below the existing node root. Nodes are created in preorder.
+    private void expandPredictive(int start, int root, SubtreeReuse reuse) {
+        // Pending symbols and the node each one becomes a child of
+        int[] stackSymbols = new int[64];
+        int[] stackParents = new int[64];
+        int top = 0;
+        int production = predict(start);
+        if (production == PredictiveTable.ERROR) {
+            throw predictiveSyntaxError();
+        }
+        int[] rhs = predictiveTable.production(production);
+        for (int i = rhs.length - 1; i >= 0; i--) {
+            stackSymbols[top] = rhs[i];
+            stackParents[top++] = root;
+        }
+
+        while (top > 0) {
+            if (top == 1 && reuse != null && !symbols.isTerminal(stackSymbols[0])
+                    && reuse.reuse(stackSymbols[0], currentTokenIndex, stackParents[0])) {
+                return;
+            }
+            int symbol = stackSymbols[--top];
+            int parent = stackParents[top];
+            if (symbols.isTerminal(symbol)) {
+                if (!hasToken(currentTokenIndex) || tokens.get(currentTokenIndex).symbolId != symbol) {
+                    throw predictiveSyntaxError();
                 }
-                Node childNode = new Node(generateUNID(),parentNode.unid, currentToken.word, true);
-                parentNode.addChild(childNode);
-                syntaxTree.addLeafNode(childNode);
+                int leaf = generateUNID();
+                syntaxTree.addTokenLeaf(leaf, parent, currentTokenIndex);
+                syntaxTree.addChild(parent, leaf);
                 currentTokenIndex++;
+                continue;
+            }
+
+            production = predict(symbol);
+            if (production == PredictiveTable.ERROR) {
+                throw predictiveSyntaxError();
+            }
+            metrics.productionsTried++;
+            int node = generateUNID();
+            trace.trace(ParserTrace.PREDICTED_PRODUCTION, symbol, currentTokenIndex, node, predictiveTable.alternative(production));
+            syntaxTree.addInnerNode(node, parent, symbol);
+            syntaxTree.addChild(parent, node);
+            rhs = predictiveTable.production(production);
+            if (top + rhs.length > stackSymbols.length) {
+                stackSymbols = Arrays.copyOf(stackSymbols, Math.max(stackSymbols.length * 2, top + rhs.length));
+                stackParents = Arrays.copyOf(stackParents, stackSymbols.length);
+            }
+            for (int i = rhs.length - 1; i >= 0; i--) {
+                stackSymbols[top] = rhs[i];
+                stackParents[top++] = node;
+            }
+        }
+    }
+
+    // Predict a production from the next MAX_LOOKAHEAD tokens, waiting for them if needed
+    private int predict(int nonTerminal) {
+        int count = 0;
+        while (count < lookahead.length && hasToken(currentTokenIndex + count)) {
+            int terminal = tokens.get(currentTokenIndex + count).symbolId;
+            lookahead[count++] = terminal >= 0 ? symbols.terminalIndex(terminal) : -1;
+        }
+        return predictiveTable.predict(nonTerminal, lookahead, count, 0);
+    }
+
+    private RuntimeException predictiveSyntaxError() {
+        trace.dump(System.err);
+        if (!hasToken(currentTokenIndex)) {
+            return new RuntimeException("Syntax error: Unexpected end of input at position " + currentTokenIndex);
+        }
+        return new RuntimeException("Syntax error: Unexpected token " + tokens.get(currentTokenIndex).word + " at position " + currentTokenIndex);
+    }
+
+    // A pending call of the recursive descent on a non-terminal. The calls are kept on an
+    // explicit stack of frames, so long right-recursive INSTRUC, GLOBVARS and FUNCTIONS
+    // lists use heap instead of thread stack. Frames are reused between calls.
+    private static final class Frame {
+        static final int SELECT = 0;
+        static final int CHILDREN = 1;
+        static final int DONE = 2;
+
+        int state;
+        int parentNode;
+        int symbol;
+        Token currentToken;
+        int alternative;
+        int[] production;
+        int[] childNodes = new int[8];
+        int childCount;
+        final ArrayList<Boolean> productionMatches = new ArrayList<>();
+        // Position in production of the child being parsed and its temporary node
+        int child;
+        int tempNode;
+        boolean matched;
+    }
+    private final ArrayList<Frame> frames = new ArrayList<>();
+    private int depth;
+
+    private boolean parseSymbol(int parentNode, int symbol, Token currentToken) {
+        if (symbols.isTerminal(symbol)) {
+            return parseTerminal(parentNode, symbol, currentToken);
+        }
+        depth = 0;
+        pushFrame(parentNode, symbol, currentToken);
+        while (true) {
+            Frame frame = frames.get(depth - 1);
+            if (frame.state == Frame.SELECT) {
+                selectProduction(frame);
+            }
+            if (frame.state == Frame.CHILDREN && parseChildren(frame)) {
+                continue; // a child frame was pushed
+            }
+            if (!frame.matched) {
+                trace.dump(System.err);
+                throw new RuntimeException("Syntax error: Unexpected token " + frame.currentToken.word + " at position " + currentTokenIndex);
+            }
+            frame.currentToken = null;
+            if (--depth == 0) {
                 return true;
-            } else {
-                return false;
             }
+            childParsed(frames.get(depth - 1), true);
+        }
+    }
+
+    private void pushFrame(int parentNode, int symbol, Token currentToken) {
+        if (depth == frames.size()) {
+            frames.add(new Frame());
+        }
+        Frame frame = frames.get(depth++);
+        frame.state = Frame.SELECT;
+        frame.parentNode = parentNode;
+        frame.symbol = symbol;
+        frame.currentToken = currentToken;
+        frame.alternative = 0;
+        frame.matched = false;
+    }
+
+    private boolean parseTerminal(int parentNode, int symbol, Token currentToken) {
+        if (reachable(symbol, currentToken)) {
+            trace.debug(ParserTrace.REACHED_TERMINAL, symbol, currentTokenIndex, parentNode, 0);
+            if(syntaxTree.isLeaf(parentNode)) {
+                //already added leaf node
+                currentTokenIndex++;
+                return true;
+            }
+            int childNode = generateUNID();
+            syntaxTree.addTokenLeaf(childNode, parentNode, currentTokenIndex);
+            syntaxTree.addChild(parentNode, childNode);
+            currentTokenIndex++;
+            return true;
         } else {
-            boolean matched = false;
-            for (List<String> production : grammar.get(symbol)) {
-                //check if production is empty 
-                if((production.isEmpty() || symbol.equals("SUBFUNCS"))&&isNullable(symbol,currentToken)) {
-                    matched = true;
-                    break;
-                }
-                else if(production.isEmpty()) {
-                    break;
-                }
-                List<Node> childNodes = new ArrayList<>();
-                ArrayList<Boolean> productionMatches =new ArrayList<Boolean>();
-                            
-                //handle terminal rules will one element in their list
-                //System.out.println("PRODUCATION: " + production+ " TOKEN: " + currentToken.word + " currentTokenIndex: " + currentTokenIndex);
-                if(production.size() == 1 && !grammar.containsKey(production.get(0))) {
-                    //Node tempNode = new Node(generateUNID(),parentNode.unid, production.get(0), false);
-                    if (parseSymbol(parentNode, production.get(0), currentToken)) {
-                        matched = true;
-                        break;
-                    } else {
-                        continue;//check other rules
-                    }
-                }
-                //handle non terminal symbols with keyword 
-                if(!grammar.containsKey(production.get(0)) && !production.get(0).equals(currentToken.word)) {
-                    continue;//check other rules
-                }
-                //prune based on first sets
-                if (grammar.containsKey(production.get(0))&&!firstSets.get(production.get(0)).contains(getTokenWord(currentToken))) {
+            return false;
+        }
+    }
+
+    // Try the productions of the frame's symbol in order until one is chosen, which moves
+    // the frame to CHILDREN, or the symbol is matched or fails without children (DONE)
+    private void selectProduction(Frame frame) {
+        int symbol = frame.symbol;
+        Token currentToken = frame.currentToken;
+        frame.state = Frame.DONE;
+        // Every alternative left with continue was tried and backtracked from
+        for (; frame.alternative < productions[symbol].length; frame.alternative++, metrics.productionsBacktracked++) {
+            metrics.productionsTried++;
+            int[] production = productions[symbol][frame.alternative];
+            //check if production is empty 
+            if((production.length == 0 || symbol == subfuncsId)&&isNullable(symbol,currentToken)) {
+                frame.matched = true;
+                return;
+            }
+            else if(production.length == 0) {
+                return;
+            }
+            //handle terminal rules will one element in their list
+            if(production.length == 1 && symbols.isTerminal(production[0])) {
+                if (parseTerminal(frame.parentNode, production[0], currentToken)) {
+                    frame.matched = true;
+                    return;
+                } else {
                     continue;//check other rules
                 }
-                //handle ambiguous ASSIGN rule
-                if (symbol.equals("ASSIGN")) {
-                    // Check if current token is a variable and its next token matches the current production
-                    if (getTokenWord(currentToken).equals("V")) {
-                        // Look ahead to check if the next token is '=' or '<'
-                        Token nextToken = tokens.get(currentTokenIndex + 1);
-                
-                        // Continue if the next token doesn't match the expected '<' or '='
-                        if (!(production.get(1).equals("<") && nextToken.word.equals("<")) &&
-                            !(production.get(1).equals("=") && nextToken.word.equals("="))) {
-                            continue;
-                        }
+            }
+            //handle non terminal symbols with keyword 
+            if(symbols.isTerminal(production[0]) && production[0] != currentToken.wordId) {
+                continue;//check other rules
+            }
+            //prune based on first sets
+            if (!symbols.isTerminal(production[0])&&!inFirstSet(production[0], currentToken)) {
+                continue;//check other rules
+            }
+            //handle ambiguous ASSIGN rule
+            if (symbol == assignId) {
+                // Check if current token is a variable and its next token matches the current production
+                if (currentToken.symbolId == variableId) {
+                    // Look ahead to check if the next token is '=' or '<'
+                    Token nextToken = token(currentTokenIndex + 1);
+            
+                    // Continue if the next token doesn't match the expected '<' or '='
+                    if (!(production[1] == lessThanId && nextToken.wordId == lessThanId) &&
+                        !(production[1] == equalsId && nextToken.wordId == equalsId)) {
+                        continue;
                     }
                 }
+            }
+            frame.production = production;
+            if (frame.childNodes.length < production.length) {
+                frame.childNodes = new int[production.length];
+            }
+            frame.childCount = 0;
+            frame.productionMatches.clear();
+            frame.child = 0;
+            frame.state = Frame.CHILDREN;
+            return;
+        }
+    }
 
-                //handle non terminal symbols with multiple children
-                for (String childSymbol : production) {
-                    //System.out.println("CHILD SYMBOL: " + childSymbol);
-                    if (currentTokenIndex >= tokens.size()) {
-                        productionMatches.add(false);
-                        break;
-                    }
-                    
-                    if(childSymbol.equals(symbol) ) {
-                        //handle nullable symbols
-                        productionMatches.add(true);
-                        if(!allProductionMatchesTrue(productionMatches))
-                            break;//check other rules
-                    }
-                    Node tempNode;
-                    if(grammar.containsKey(childSymbol)) {
-                        tempNode = new Node(generateUNID(),parentNode.unid, childSymbol, false);
-                        syntaxTree.addInnerNode(tempNode);
-                    }
-                    else{
-                        tempNode = new Node(generateUNID(),parentNode.unid, childSymbol, true);
-                        syntaxTree.addLeafNode(tempNode);
-                    }
+    // Parse the children of the chosen production from frame.child on. Returns true when a
+    // non-terminal child needs a frame of its own, which has been pushed; the frame goes on
+    // in childParsed once that child is done. Otherwise the production ends and the frame is DONE.
+    private boolean parseChildren(Frame frame) {
+        int[] production = frame.production;
+        //handle non terminal symbols with multiple children
+        while (frame.child < production.length) {
+            int childSymbol = production[frame.child];
+            if (!hasToken(currentTokenIndex)) {
+                frame.productionMatches.add(false);
+                break;
+            }
+            
+            if(childSymbol == frame.symbol ) {
+                //handle nullable symbols
+                frame.productionMatches.add(true);
+                if(!allProductionMatchesTrue(frame.productionMatches))
+                    break;//check other rules
+            }
+            int tempNode = generateUNID();
+            if(!symbols.isTerminal(childSymbol)) {
+                syntaxTree.addInnerNode(tempNode, frame.parentNode, childSymbol);
+            }
+            else{
+                syntaxTree.addLeafNode(tempNode, frame.parentNode, childSymbol);
+            }
 
-                    System.out.println("adding inner node: " + tempNode.getSymbol());
-                    
-                    boolean temp = parseSymbol(tempNode, childSymbol, tokens.get(currentTokenIndex));
-                    if (temp ) {
-                        System.out.println("Matched temp node: " + tempNode.getSymbol() + " token " + currentToken.word + " currentTokenIndex: " + currentTokenIndex);
-                        childNodes.add(tempNode);
-                        productionMatches.add(true);
-                    } else {
-                        System.out.println("Failed to match temp node: " + tempNode.getSymbol() + " token " + currentToken.word + " currentTokenIndex: " + currentTokenIndex);
-                        productionMatches.add(false);
-                        syntaxTree.removeNode(tempNode);
-                        //continue checking other child symbols
-                    }
-                    if (currentTokenIndex < tokens.size()) {
-                        currentToken = tokens.get(currentTokenIndex);
-                    }
-                }
-    
-                if (productionMatches.contains(true)) {
-                    System.out.println("Matched Non terminal production: " + production + " token " + currentToken.word + " currentTokenIndex: " + currentTokenIndex);
-                    System.out.println("Parent Node: " + parentNode.getSymbol());
-                    Node nonTerminalNode = new Node(generateUNID(),parentNode.unid, symbol, false);
-                    for (Node childNode : childNodes) {
-                        //System.out.println("Adding child node: " + childNode.getSymbol());
-                        nonTerminalNode.addChild(childNode);
-                    }
-                    parentNode.addChild(nonTerminalNode);
-                    syntaxTree.addInnerNode(nonTerminalNode);
-                    matched = true;
-                    break;
-                } else {
-                    //print tokenindex and savedtokenindex
-                    //System.out.println("TokenIndex: " + currentTokenIndex + " SavedTokenIndex: " + savedTokenIndex);
-                    break;
-                }
+            trace.trace(ParserTrace.ADDED_TEMP_NODE, childSymbol, currentTokenIndex, tempNode, 0);
+            
+            frame.tempNode = tempNode;
+            if (symbols.isTerminal(childSymbol)) {
+                childParsed(frame, parseTerminal(tempNode, childSymbol, token(currentTokenIndex)));
+            } else {
+                pushFrame(tempNode, childSymbol, token(currentTokenIndex));
+                return true;
             }
-    
-            if (!matched) {
-                throw new RuntimeException("Syntax error: Unexpected token " + currentToken.word + " at position " + currentTokenIndex);
+        }
+
+        if (frame.productionMatches.contains(true)) {
+            trace.debug(ParserTrace.MATCHED_PRODUCTION, frame.symbol, currentTokenIndex, frame.parentNode, frame.alternative);
+            int nonTerminalNode = generateUNID();
+            syntaxTree.addInnerNode(nonTerminalNode, frame.parentNode, frame.symbol);
+            for (int i = 0; i < frame.childCount; i++) {
+                syntaxTree.addChild(nonTerminalNode, frame.childNodes[i]);
             }
+            syntaxTree.addChild(frame.parentNode, nonTerminalNode);
+            frame.matched = true;
         }
-        return true;
+        frame.state = Frame.DONE;
+        return false;
+    }
+
+    // The child at frame.child has been parsed, move on to the next one
+    private void childParsed(Frame frame, boolean temp) {
+        int childSymbol = frame.production[frame.child];
+        int tempNode = frame.tempNode;
+        if (temp ) {
+            trace.trace(ParserTrace.MATCHED_TEMP_NODE, childSymbol, currentTokenIndex, tempNode, 0);
+            frame.childNodes[frame.childCount++] = tempNode;
+            frame.productionMatches.add(true);
+        } else {
+            trace.trace(ParserTrace.FAILED_TEMP_NODE, childSymbol, currentTokenIndex, tempNode, 0);
+            frame.productionMatches.add(false);
+            syntaxTree.removeNode(tempNode);
+            //continue checking other child symbols
+        }
+        if (hasToken(currentTokenIndex)) {
+            frame.currentToken = tokens.get(currentTokenIndex);
+        }
+        frame.child++;
     }
     
     private boolean allProductionMatchesTrue(ArrayList<Boolean> productionMatches) {
@@ -407,52 +820,46 @@ class RecSPLParser {
         }
         return true;
     }
-    private boolean isNullable(String symbol, Token token) {
-        //print parent node symbol and current token
-        System.out.println("isNullable: " + symbol + " token " + token.word + " currentTokenIndex: " + currentTokenIndex);
+    private boolean isNullable(int symbol, Token token) {
+        trace.trace(ParserTrace.NULLABLE_CHECK, symbol, currentTokenIndex, -1, 0);
         //check if symbol parent node key is GLOBVARS and current token is begin
-        if(symbol.equals("GLOBVARS") && token.word.equals("begin")) {
+        if(symbol == globvarsId && token.wordId == beginId) {
             return true;
         }
         //check if symbol key is INSTRUC and current token is end
-        else if(symbol.equals("INSTRUC") && token.word.equals("end")) {
+        else if(symbol == instrucId && token.wordId == endId) {
             return true;
         }
         //check if symbol key is SUBFUNCS and current token is end
-        else if(symbol.equals("SUBFUNCS") && token.word.equals("end")) {
+        else if(symbol == subfuncsId && token.wordId == endId) {
             return true;
         }
         return false;
     }
-    
-    private boolean reachable(String symbol, Token token) {
-        if (!grammar.containsKey(symbol)) {
-            // Check if the token is a direct match with the terminal symbol
-            if (symbol.equals(getTokenWord(token))) {
-                return true; // Found a direct match with the token type
-            }
+
+    private boolean inFirstSet(int nonTerminal, Token token) {
+        return token.symbolId >= 0 && firstSets[nonTerminal].get(symbols.terminalIndex(token.symbolId));
+    }
+
+    private boolean reachable(int symbol, Token token) {
+        if (token.symbolId < 0) {
             return false;
         }
-    
-        for (List<String> production : grammar.get(symbol)) {
-            for (String element : production) {
-                if (element.equals(getTokenWord(token))) {
-                    return true; // Found a direct match with the token type
-                }
-    
-                // Recursively check if the token is reachable from the non-terminal
-                if (grammar.containsKey(element) && reachable(element, token)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return reachableTerminals[symbol].get(symbols.terminalIndex(token.symbolId));
     }
     
     private int generateUNID() {
         return nodeId++; // Replace with a proper unique ID generation logic
     }
 
+    // The tree of the last parse as Node objects, for passes such as SemanticAnalyzer
+    public SyntaxTree syntaxTree() {
+        if (!(syntaxTree instanceof SyntaxTree)) {
+            throw new IllegalStateException("The syntax tree is not Node based, parse without the arena tree");
+        }
+        return (SyntaxTree) syntaxTree;
+    }
+
     public String generateSyntaxTreeXML() {
         return syntaxTree.toXML();
     }
@@ -478,18 +885,37 @@ class RecSPLParser {
         // System.out.println("Logging tree  ..................................");
         // System.out.println(syntaxTree.toString());
         // System.out.println("................................................");
-        try (FileWriter writer = new FileWriter(fileName)) {
-            // Get the XML representation of the syntax tree
-
-            String xmlContent = syntaxTree.toXML();
-            
-            // Write the XML content to the file
-            writer.write(xmlContent);
-            writer.flush();
-            
+        try {
+            writeSyntaxTree(fileName);
             System.out.println("Syntax tree successfully written to " + fileName);
         } catch (IOException e) {
             System.err.println("Error writing syntax tree to file: " + e.getMessage());
         }
     }
+    // Stream the XML representation of the syntax tree straight to the file
+    public void writeSyntaxTree(String fileName) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(fileName), 1 << 16)) {
+            writeSyntaxTree(writer);
+        }
+    }
+    public void writeSyntaxTree(Writer writer) throws IOException {
+        CompileMetrics.PhaseEvent phase = metrics.begin(CompileMetrics.WRITE_TREE);
+        try {
+            syntaxTree.writeXML(writer);
+        } finally {
+            metrics.end(phase);
+        }
+    }
+    // Write the syntax tree in the binary format described in BinarySyntaxTree
+    public void writeSyntaxTreeBinary(String fileName) {
+        try {
+            writeBinarySyntaxTree(fileName);
+            System.out.println("Binary syntax tree successfully written to " + fileName);
+        } catch (IOException e) {
+            System.err.println("Error writing syntax tree to file: " + e.getMessage());
+        }
+    }
+    public void writeBinarySyntaxTree(String fileName) throws IOException {
+        BinarySyntaxTree.write(syntaxTree::forEachNode, fileName);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,407 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Name resolution and type checking of a parsed program in one pass over its SyntaxTree.
+//
+// Scopes follow the nesting of the program: main holds the global variables and the
+// functions of the top level FUNCTIONS, and every function opens a scope with its three
+// num parameters, its three local variables and the functions of its SUBFUNCS. A name is
+// visible in the scope that declares it and every scope nested in it, and an inner
+// declaration hides an outer one with the same name. Functions are entered before the
+// instructions of their scope are checked, so a function can be called before its
+// declaration, by itself, by its siblings and by its parent.
+//
+// The visible names live in a single hash map from name to innermost declaration. Every
+// declaration remembers the one it hides and leaving a scope puts those back, so a lookup
+// is one hash probe however deep the scopes are nested.
+//
+// Resolved declarations are attached to the tree by UNID, see SyntaxTree.declaration, for
+// every VNAME and FNAME node and the token leaf below it. The checks only look at the
+// children that are present and pick them by symbol, so they accept the Node trees of both
+// parsers, including the doubled nodes of the legacy parser (see ProgramWalker.content).
+final class SemanticAnalyzer extends ProgramWalker {
+    // Types of names and expressions. UNKNOWN is the type of anything that already
+    // produced an error, so one mistake is not reported again by every enclosing check.
+    static final int UNKNOWN = 0;
+    static final int NUM = 1;
+    static final int TEXT = 2;
+    static final int BOOL = 3;
+    static final int VOID = 4;
+    private static final String[] TYPE_NAMES = {"unknown", "num", "text", "bool", "void"};
+
+    // Kinds of declarations
+    static final int VARIABLE = 0;
+    static final int PARAMETER = 1;
+    static final int FUNCTION = 2;
+    private static final String[] KIND_NAMES = {"variable", "parameter", "function"};
+
+    static final class Declaration {
+        // Dense id in declaration order
+        final int id;
+        final int kind;
+        final String name;
+        // Variable type, or the return type of a function
+        final int type;
+        // UNID of the VNAME or FNAME node of the declaration
+        final int node;
+        final Scope scope;
+        // Declaration with the same name in an enclosing scope that this one hides
+        private Declaration hidden;
+
+        Declaration(int id, int kind, String name, int type, int node, Scope scope) {
+            this.id = id;
+            this.kind = kind;
+            this.name = name;
+            this.type = type;
+            this.node = node;
+            this.scope = scope;
+        }
+
+        @Override
+        public String toString() {
+            return KIND_NAMES[kind] + " " + TYPE_NAMES[type] + " " + name;
+        }
+    }
+
+    static final class Scope {
+        final Scope parent;
+        // The function whose body this is, null for main
+        final Declaration function;
+        final int depth;
+        final List<Declaration> declarations = new ArrayList<>();
+
+        Scope(Scope parent, Declaration function) {
+            this.parent = parent;
+            this.function = function;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+    }
+
+    private final Map<String, Declaration> visible = new HashMap<>();
+    private final List<Declaration> declarations = new ArrayList<>();
+    private final List<String> errors = new ArrayList<>();
+    private Declaration[] byUnid;
+    private Scope scope;
+
+    SemanticAnalyzer(SyntaxTree tree) {
+        super(tree);
+    }
+
+    // Check the whole program and attach the declarations to the tree. Returns the
+    // semantic errors in source order within each scope, empty if there are none.
+    List<String> analyze() {
+        byUnid = new Declaration[tree.unidLimit()];
+        Node prog = program();
+        scope = new Scope(null, null);
+        List<Node> functions = declareFunctions(child(prog, functionsId));
+        declareGlobals(child(prog, globvarsId));
+        checkAlgo(child(prog, algoId));
+        checkFunctions(functions);
+        leaveScope();
+        tree.attachDeclarations(byUnid);
+        return errors;
+    }
+
+    List<Declaration> declarations() {
+        return declarations;
+    }
+
+    List<String> errors() {
+        return errors;
+    }
+
+    private void error(String message, Node at) {
+        Node token = leaf(at);
+        errors.add("Semantic error: " + message
+            + (token != null && token.token != null ? " at token " + token.token.id : ""));
+    }
+
+    // Scopes
+
+    private void enterScope(Declaration function) {
+        scope = new Scope(scope, function);
+    }
+
+    private void leaveScope() {
+        List<Declaration> declared = scope.declarations;
+        for (int i = declared.size() - 1; i >= 0; i--) {
+            Declaration declaration = declared.get(i);
+            if (declaration.hidden != null) {
+                visible.put(declaration.name, declaration.hidden);
+            } else {
+                visible.remove(declaration.name);
+            }
+        }
+        scope = scope.parent;
+    }
+
+    private Declaration declare(int kind, Node name, int type) {
+        Node token = leaf(name);
+        if (token == null || token.token == null) {
+            return null;
+        }
+        String word = token.token.word;
+        Declaration outer = visible.get(word);
+        if (outer != null && outer.scope == scope) {
+            error(KIND_NAMES[kind] + " " + word + " is already declared as " + outer, name);
+            attach(name, outer);
+            return outer;
+        }
+        Declaration declaration = new Declaration(declarations.size(), kind, word, type, name.unid, scope);
+        declaration.hidden = outer;
+        declarations.add(declaration);
+        scope.declarations.add(declaration);
+        visible.put(word, declaration);
+        attach(name, declaration);
+        return declaration;
+    }
+
+    // The visible declaration of a VNAME or FNAME, null after reporting it as undeclared
+    private Declaration resolve(Node name, int kind) {
+        Node token = leaf(name);
+        if (token == null || token.token == null) {
+            return null;
+        }
+        Declaration declaration = visible.get(token.token.word);
+        if (declaration == null || (declaration.kind == FUNCTION) != (kind == FUNCTION)) {
+            error("Undeclared " + (kind == FUNCTION ? "function " : "variable ") + token.token.word, name);
+            return null;
+        }
+        attach(name, declaration);
+        return declaration;
+    }
+
+    private void attach(Node name, Declaration declaration) {
+        for (Node node = name; node != null; node = node.isLeaf || node.children.isEmpty() ? null : node.children.get(0)) {
+            byUnid[node.unid] = declaration;
+        }
+    }
+
+    // Declarations
+
+    private int typeOf(Node vtyp) {
+        Node word = leaf(vtyp);
+        if (word == null) {
+            return UNKNOWN;
+        }
+        return word.symbolId == numId ? NUM : word.symbolId == textId ? TEXT : word.symbolId == voidId ? VOID : UNKNOWN;
+    }
+
+    // GLOBVARS is a right recursive list of VTYP VNAME , GLOBVARS
+    private void declareGlobals(Node globvars) {
+        for (Node list = globvars; list != null; list = child(list, globvarsId)) {
+            Node name = child(list, vnameId);
+            if (name != null) {
+                declare(VARIABLE, name, typeOf(child(list, vtypId)));
+            }
+        }
+    }
+
+    // Declare the functions of a FUNCTIONS list in the current scope and return their DECL nodes
+    private List<Node> declareFunctions(Node functions) {
+        List<Node> decls = new ArrayList<>();
+        for (Node list = functions; list != null; list = child(list, functionsId)) {
+            Node decl = child(list, declId);
+            Node header = child(decl, headerId);
+            Node name = child(header, fnameId);
+            if (name != null) {
+                declare(FUNCTION, name, typeOf(child(header, ftypId)));
+                decls.add(decl);
+            }
+        }
+        return decls;
+    }
+
+    private void checkFunctions(List<Node> decls) {
+        for (Node decl : decls) {
+            Node header = child(decl, headerId);
+            Declaration function = byUnid[child(header, fnameId).unid];
+            enterScope(function);
+            for (int i = 0; i < 3; i++) {
+                Node parameter = child(header, vnameId, i);
+                if (parameter != null) {
+                    declare(PARAMETER, parameter, NUM);
+                }
+            }
+            Node body = child(decl, bodyId);
+            Node locvars = child(body, locvarsId);
+            for (int i = 0; i < 3; i++) {
+                Node name = child(locvars, vnameId, i);
+                if (name != null) {
+                    declare(VARIABLE, name, typeOf(child(locvars, vtypId, i)));
+                }
+            }
+            List<Node> subfunctions = declareFunctions(child(child(body, subfuncsId), functionsId));
+            checkAlgo(child(body, algoId));
+            checkFunctions(subfunctions);
+            leaveScope();
+        }
+    }
+
+    // Instructions
+
+    private void checkAlgo(Node algo) {
+        // INSTRUC is a right recursive list of COMMAND ; INSTRUC
+        for (Node list = child(algo, instrucId); list != null; list = child(list, instrucId)) {
+            Node command = child(list, commandId);
+            if (command != null && !command.children.isEmpty()) {
+                checkCommand(command);
+            }
+        }
+    }
+
+    private void checkCommand(Node command) {
+        Node first = command.children.get(0);
+        if (first.isLeaf) {
+            if (first.symbolId == printId) {
+                atomicType(child(command, atomicId));
+            } else if (first.symbolId == returnId) {
+                checkReturn(command);
+            }
+            return; // skip and halt
+        }
+        Node statement = content(first);
+        if (statement.symbolId == assignId) {
+            checkAssign(statement);
+        } else if (statement.symbolId == callId) {
+            int type = callType(statement);
+            if (type != VOID && type != UNKNOWN) {
+                error("Result of " + leaf(child(statement, fnameId)).token.word + " is not used, only void functions can be called as an instruction", statement);
+            }
+        } else if (statement.symbolId == branchId) {
+            int type = conditionType(child(statement, condId));
+            if (type != BOOL && type != UNKNOWN) {
+                error("Condition of if is " + TYPE_NAMES[type] + ", not bool", statement);
+            }
+            checkAlgo(child(statement, algoId, 0));
+            checkAlgo(child(statement, algoId, 1));
+        }
+    }
+
+    private void checkReturn(Node command) {
+        Node atomic = child(command, atomicId);
+        int type = atomicType(atomic);
+        Declaration function = scope.function;
+        if (function == null) {
+            error("return outside of a function", atomic);
+        } else if (function.type == VOID) {
+            error("return with a value in void function " + function.name, atomic);
+        } else if (type != function.type && type != UNKNOWN) {
+            error("return of " + TYPE_NAMES[type] + " from " + TYPE_NAMES[function.type] + " function " + function.name, atomic);
+        }
+    }
+
+    private void checkAssign(Node assign) {
+        Node name = child(assign, vnameId);
+        Declaration variable = name != null ? resolve(name, VARIABLE) : null;
+        Node term = child(assign, termId);
+        if (term == null) {
+            // VNAME < input reads a number
+            if (variable != null && variable.type != NUM) {
+                error("input into " + TYPE_NAMES[variable.type] + " variable " + variable.name, assign);
+            }
+            return;
+        }
+        int type = termType(term);
+        if (variable != null && type != UNKNOWN && type != variable.type) {
+            error("Cannot assign " + TYPE_NAMES[type] + " to " + TYPE_NAMES[variable.type] + " variable " + variable.name, assign);
+        }
+    }
+
+    // Expressions
+
+    private int atomicType(Node atomic) {
+        if (atomic == null) {
+            return UNKNOWN;
+        }
+        Node name = child(atomic, vnameId);
+        if (name != null) {
+            Declaration variable = resolve(name, VARIABLE);
+            return variable != null ? variable.type : UNKNOWN;
+        }
+        Node value = leaf(child(atomic, constId));
+        if (value == null) {
+            return UNKNOWN;
+        }
+        return value.symbolId == numberId ? NUM : value.symbolId == stringId ? TEXT : UNKNOWN;
+    }
+
+    private int termType(Node term) {
+        Node value = firstChild(term);
+        if (value == null) {
+            return UNKNOWN;
+        }
+        if (value.symbolId == callId) {
+            int type = callType(value);
+            if (type == VOID) {
+                error("void function " + leaf(child(value, fnameId)).token.word + " has no value", value);
+                return UNKNOWN;
+            }
+            return type;
+        }
+        return operandType(value);
+    }
+
+    private int callType(Node call) {
+        Node name = child(call, fnameId);
+        Declaration function = name != null ? resolve(name, FUNCTION) : null;
+        for (int i = 0; i < 3; i++) {
+            Node argument = child(call, atomicId, i);
+            int type = atomicType(argument);
+            if (argument != null && type != NUM && type != UNKNOWN) {
+                error("Argument " + (i + 1) + " of " + (function != null ? function.name : "a call") + " is " + TYPE_NAMES[type] + ", not num", argument);
+            }
+        }
+        return function != null ? function.type : UNKNOWN;
+    }
+
+    private int conditionType(Node cond) {
+        return operandType(firstChild(cond));
+    }
+
+    // Type of an ATOMIC, an ARG, or an OP, SIMPLE or COMPOSIT operation
+    private int operandType(Node operand) {
+        if (operand == null) {
+            return UNKNOWN;
+        }
+        if (operand.symbolId == atomicId) {
+            return atomicType(operand);
+        }
+        if (operand.symbolId == argId) {
+            return operandType(firstChild(operand));
+        }
+        // UNOP ( operand ) or BINOP ( operand , operand )
+        Node operator = operator(operand);
+        if (operator == null) {
+            return UNKNOWN;
+        }
+        int[] types = new int[operator.symbolId == notId || operator.symbolId == sqrtId ? 1 : 2];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = operandType(operand(operand, i));
+        }
+        return checkOperator(operator, types);
+    }
+
+    // Result type of an operator applied to operands of the given types
+    private int checkOperator(Node operator, int[] types) {
+        int symbol = operator.symbolId;
+        int operandType = symbol == notId || symbol == orId || symbol == andId ? BOOL : NUM;
+        int result = symbol == notId || symbol == orId || symbol == andId || symbol == eqId || symbol == grtId ? BOOL : NUM;
+        String word = symbols.name(symbol);
+        if (symbol == eqId) {
+            // eq compares two values of any one type
+            if (types.length == 2 && types[0] != UNKNOWN && types[1] != UNKNOWN && types[0] != types[1]) {
+                error("eq compares " + TYPE_NAMES[types[0]] + " with " + TYPE_NAMES[types[1]], operator);
+            }
+            return result;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != operandType && types[i] != UNKNOWN) {
+                error("Operand " + (i + 1) + " of " + word + " is " + TYPE_NAMES[types[i]] + ", not " + TYPE_NAMES[operandType], operator);
+            }
+        }
+        return result;
+    }
+}
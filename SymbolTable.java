@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Dense int ids for the grammar symbols. Non-terminals are numbered first
+// (0 .. nonTerminalCount-1), followed by the terminals and the end-of-input marker.
+final class SymbolTable {
+    static final String END_OF_INPUT = "$";
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final int nonTerminalCount;
+    private final int endOfInput;
+
+    SymbolTable(Map<String, List<List<String>>> grammar) {
+        for (String nonTerminal : grammar.keySet()) {
+            add(nonTerminal);
+        }
+        nonTerminalCount = names.size();
+        for (List<List<String>> productions : grammar.values()) {
+            for (List<String> production : productions) {
+                for (String symbol : production) {
+                    if (!ids.containsKey(symbol)) {
+                        add(symbol);
+                    }
+                }
+            }
+        }
+        endOfInput = add(END_OF_INPUT);
+    }
+
+    private int add(String name) {
+        int id = names.size();
+        ids.put(name, id);
+        names.add(name);
+        return id;
+    }
+
+    // Id of a symbol, or -1 if the grammar does not know it
+    int id(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    String name(int id) {
+        return names.get(id);
+    }
+
+    boolean isTerminal(int id) {
+        return id >= nonTerminalCount;
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    int nonTerminalCount() {
+        return nonTerminalCount;
+    }
+
+    int terminalCount() {
+        return names.size() - nonTerminalCount;
+    }
+
+    // Position of a terminal among the terminals, used to index parse tables and bitsets
+    int terminalIndex(int id) {
+        return id - nonTerminalCount;
+    }
+
+    int endOfInput() {
+        return endOfInput;
+    }
+}
@@ -1,32 +1,137 @@
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-class SyntaxTree {
+class SyntaxTree implements SyntaxTreeBackend {
     private Node root;
+    private SymbolTable symbols;
+    private List<Token> tokens;
     private List<Node> innerNodes;
     private List<Node> leafNodes;
+    // Every node in the tree indexed by UNID. Removed nodes are cleared here and
+    // left in innerNodes/leafNodes as tombstones until the lists are compacted.
+    private Node[] nodesById;
+    private int removedCount;
+    private int removedTotal;
+    // Declarations resolved by SemanticAnalyzer, indexed by UNID, null until it has run
+    private SemanticAnalyzer.Declaration[] declarations;
 
-    public SyntaxTree(Node root) {
+    public SyntaxTree(Node root, SymbolTable symbols) {
+        this(root, symbols, null);
+    }
+
+    // The token list is only needed when leaves are added by token index
+    public SyntaxTree(Node root, SymbolTable symbols, List<Token> tokens) {
         this.root = root;
+        this.symbols = symbols;
+        this.tokens = tokens;
         this.innerNodes = new ArrayList<>();
         this.leafNodes = new ArrayList<>();
+        this.nodesById = new Node[64];
+        register(root);
     }
 
     public void addInnerNode(Node node) {
         innerNodes.add(node);
+        register(node);
     }
 
     public void addLeafNode(Node node) {
         leafNodes.add(node);
+        register(node);
+    }
+
+    private void register(Node node) {
+        if (node.unid >= nodesById.length) {
+            nodesById = Arrays.copyOf(nodesById, Math.max(nodesById.length * 2, node.unid + 1));
+        }
+        nodesById[node.unid] = node;
+    }
+
+    @Override
+    public void addInnerNode(int unid, int parentId, int symbolId) {
+        addInnerNode(new Node(unid, parentId, symbolId, false));
+    }
+
+    @Override
+    public void addLeafNode(int unid, int parentId, int symbolId) {
+        addLeafNode(new Node(unid, parentId, symbolId, true));
+    }
+
+    @Override
+    public void addTokenLeaf(int unid, int parentId, int tokenIndex) {
+        addLeafNode(new Node(unid, parentId, tokens.get(tokenIndex)));
+    }
+
+    @Override
+    public void addChild(int parentId, int childId) {
+        nodesById[parentId].addChild(nodesById[childId]);
+    }
+
+    @Override
+    public void removeNode(int unid) {
+        removeNode(nodesById[unid]);
+    }
+
+    @Override
+    public int removedNodes() {
+        return removedTotal;
+    }
+
+    @Override
+    public boolean isLeaf(int unid) {
+        return nodesById[unid].isLeaf();
+    }
+
+    @Override
+    public String getLabel(int unid) {
+        return nodesById[unid].getLabel(symbols);
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    public Node getNode(int unid) {
+        return findNodeById(unid);
+    }
+
+    SymbolTable symbols() {
+        return symbols;
+    }
+
+    // Every UNID in the tree is below this
+    int unidLimit() {
+        return nodesById.length;
+    }
+
+    void attachDeclarations(SemanticAnalyzer.Declaration[] byUnid) {
+        declarations = byUnid;
+    }
+
+    // Declaration a VNAME or FNAME node, or its token leaf, resolves to; null if the node
+    // is not a name or the tree has not been analyzed
+    SemanticAnalyzer.Declaration declaration(int unid) {
+        return declarations != null && unid < declarations.length ? declarations[unid] : null;
+    }
+
+    // False for nodes that have been removed from the tree
+    private boolean isLive(Node node) {
+        return node.unid < nodesById.length && nodesById[node.unid] == node;
     }
     public String toString() {
         StringBuilder tree = new StringBuilder();
-        tree.append("Root: ").append(root.getSymbol()).append(" (ID: ").append(root.getUNID()).append(")\n");
+        tree.append("Root: ").append(root.getLabel(symbols)).append(" (ID: ").append(root.getUNID()).append(")\n");
         tree.append("Inner Nodes: \n");
         for (Node innerNode : innerNodes) {
+            if (!isLive(innerNode)) {
+                continue;
+            }
             tree.append("Node ID: ").append(innerNode.getUNID())
                 .append(", Parent ID: ").append(innerNode.parentId)
-                .append(", Symbol: ").append(innerNode.getSymbol())
+                .append(", Symbol: ").append(innerNode.getLabel(symbols))
                 .append(", Children: [");
             for (Node child : innerNode.getChildren()) {
                 tree.append(child.getUNID()).append(", ");
@@ -35,42 +140,73 @@ class SyntaxTree {
         }
         tree.append("Leaf Nodes: \n");
         for (Node leafNode : leafNodes) {
+            if (!isLive(leafNode)) {
+                continue;
+            }
             tree.append("Node ID: ").append(leafNode.getUNID())
                 .append(", Parent ID: ").append(leafNode.parentId)
-                .append(", Symbol: ").append(leafNode.getSymbol())
+                .append(", Symbol: ").append(leafNode.getLabel(symbols))
                 .append("\n");
         }
         return tree.toString();
     }
-    public String toXML() {
-        StringBuilder xml = new StringBuilder();
-        xml.append("<SYNTREE>\n");
-        xml.append("<ROOT>\n");
-        xml.append("\t<UNID>").append(root.getUNID()).append("</UNID>\n");
-        xml.append("\t<SYMB>").append(root.getSymbol()).append("</SYMB>\n");
-        xml.append("\t<CHILDREN>\n");
-        for (Node child : root.getChildren()) {
-            xml.append("\t\t<ID>").append(child.getUNID()).append("</ID>\n");
+    @Override
+    public void forEachNode(NodeVisitor visitor) throws IOException {
+        int[] children = new int[16];
+        children = visit(visitor, root, children);
+        for (Node innerNode : innerNodes) {
+            if (isLive(innerNode)) {
+                children = visit(visitor, innerNode, children);
+            }
+        }
+        for (Node leafNode : leafNodes) {
+            if (isLive(leafNode)) {
+                children = visit(visitor, leafNode, children);
+            }
+        }
+    }
+
+    private int[] visit(NodeVisitor visitor, Node node, int[] children) throws IOException {
+        int count = node.getChildren().size();
+        if (count > children.length) {
+            children = new int[Math.max(count, children.length * 2)];
         }
-        xml.append("\t</CHILDREN>\n");
-        xml.append("</ROOT>\n");
+        for (int i = 0; i < count; i++) {
+            children[i] = node.getChildren().get(i).getUNID();
+        }
+        visitor.visit(node.getUNID(), node.parentId, node.isLeaf(), node.getLabel(symbols), children, count);
+        return children;
+    }
 
-        xml.append("<INNERNODES>\n");
+    @Override
+    public void writeXML(Writer out) throws IOException {
+        XmlEmitter xml = new XmlEmitter(out);
+        xml.text("<SYNTREE>\n");
+        xml.text("<ROOT>\n");
+        xml.text("\t<UNID>").number(root.getUNID()).text("</UNID>\n");
+        xml.text("\t<SYMB>").text(root.getLabel(symbols)).text("</SYMB>\n");
+        root.writeChildren(xml);
+        xml.text("</ROOT>\n");
+
+        xml.text("<INNERNODES>\n");
         for (Node innerNode : innerNodes) {
-            xml.append(innerNode.toXML());
+            if (isLive(innerNode)) {
+                innerNode.writeXML(xml, symbols);
+            }
         }
-        xml.append("</INNERNODES>\n");
+        xml.text("</INNERNODES>\n");
 
-        xml.append("<LEAFNODES>\n");
+        xml.text("<LEAFNODES>\n");
         for (Node leafNode : leafNodes) {
-            xml.append(leafNode.toXML());
+            if (isLive(leafNode)) {
+                leafNode.writeXML(xml, symbols);
+            }
         }
-        xml.append("</LEAFNODES>\n");
+        xml.text("</LEAFNODES>\n");
 
-        xml.append("</SYNTREE>");
-        return xml.toString();
+        xml.text("</SYNTREE>");
     }
- // Remove node and its children from the tree
+ // Remove node and its children from the tree, in time proportional to the subtree
  public void removeNode(Node node) {
     // Remove the node from its parent's children list
     if (node.parentId != -1) { // Assuming -1 indicates no parent (root node)
@@ -85,30 +221,48 @@ class SyntaxTree {
         removeNode(child);
     }
 
-    // Remove the node from the list of inner nodes or leaf nodes
-    if (node.isLeaf()) {
-        leafNodes.remove(node);
-    } else {
-        innerNodes.remove(node);
+    // Tombstone the node instead of searching the inner node or leaf node list for it
+    if (node != root && isLive(node)) {
+        nodesById[node.unid] = null;
+        removedCount++;
+        removedTotal++;
+        if (removedCount > (innerNodes.size() + leafNodes.size()) / 2) {
+            compact();
+        }
     }
 }
 
-// Helper method to find a node by its ID
-private Node findNodeById(int id) {
-    if (root.getUNID() == id) {
-        return root;
-    }
-    for (Node node : innerNodes) {
-        if (node.getUNID() == id) {
-            return node;
+// Remove node and everything below it, except the subtree below keep, without touching
+// its parent's children list, for callers that rebuild the parent's children themselves
+void discardSubtree(Node node, Node keep) {
+    List<Node> pending = new ArrayList<>();
+    pending.add(node);
+    while (!pending.isEmpty()) {
+        Node next = pending.remove(pending.size() - 1);
+        if (next == keep) {
+            continue;
         }
-    }
-    for (Node node : leafNodes) {
-        if (node.getUNID() == id) {
-            return node;
+        pending.addAll(next.getChildren());
+        if (next != root && isLive(next)) {
+            nodesById[next.unid] = null;
+            removedCount++;
         }
     }
-    return null;
+    if (removedCount > (innerNodes.size() + leafNodes.size()) / 2) {
+        compact();
+    }
+}
+
+// Drop tombstones from the node lists, keeping the order of the live nodes
+private void compact() {
+    innerNodes.removeIf(node -> !isLive(node));
+    leafNodes.removeIf(node -> !isLive(node));
+    removedCount = 0;
+}
+
+// Helper method to find a node by its ID
+private Node findNodeById(int id) {
+    return id >= 0 && id < nodesById.length ? nodesById[id] : null;
 }
 
 }
@@ -0,0 +1,50 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+// Storage the parsers build the syntax tree into. Nodes are addressed by UNID.
+// SyntaxTree keeps one Node object per node, ArenaSyntaxTree keeps parallel int arrays.
+interface SyntaxTreeBackend {
+
+    // Receives the live nodes in SYNTREE order: the root, the inner nodes, then the leaves.
+    // Only the first childCount entries of children are valid and the array is reused.
+    interface NodeVisitor {
+        void visit(int unid, int parentId, boolean leaf, String label, int[] children, int childCount) throws IOException;
+    }
+
+    void addInnerNode(int unid, int parentId, int symbolId);
+
+    // Leaf for a grammar terminal that is not tied to a token
+    void addLeafNode(int unid, int parentId, int symbolId);
+
+    // Leaf for the token at tokenIndex in the parser's token list
+    void addTokenLeaf(int unid, int parentId, int tokenIndex);
+
+    void addChild(int parentId, int childId);
+
+    // Remove a node and its children, same semantics as SyntaxTree.removeNode(Node)
+    void removeNode(int unid);
+
+    // Nodes removed by removeNode so far, descendants of a removed node included
+    int removedNodes();
+
+    boolean isLeaf(int unid);
+
+    String getLabel(int unid);
+
+    void forEachNode(NodeVisitor visitor) throws IOException;
+
+    // Stream the SYNTREE document to out without building it in memory
+    void writeXML(Writer out) throws IOException;
+
+    default String toXML() {
+        StringWriter xml = new StringWriter();
+        try {
+            writeXML(xml);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return xml.toString();
+    }
+}
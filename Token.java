@@ -0,0 +1,35 @@
+// A single lexer token, shared by RecSPLLexer and RecSPLParser
+public class Token {
+    int id;
+    String tokenClass;
+    String word;
+    // Grammar terminal this token matches and the grammar symbol spelled by its word (-1 if none),
+    // assigned by RecSPLParser when it takes over the token stream
+    int symbolId = -1;
+    int wordId = -1;
+    // Character offset of the word in the source, -1 unless the scanner tracks it
+    int offset = -1;
+
+    public Token(int id, String tokenClass, String word) {
+        this.id = id;
+        this.tokenClass = tokenClass;
+        this.word = word;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTokenClass() {
+        return tokenClass;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    // Convert the token to XML format
+    public String toXML() {
+        return "<TOK>\n" + "\t<ID>" + id + "</ID>\n" + "\t<CLASS>" + tokenClass + "</CLASS>\n" + "\t<WORD>" + word + "</WORD>\n" + "</TOK>";
+    }
+}
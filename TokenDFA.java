@@ -0,0 +1,155 @@
+import java.nio.ByteBuffer;
+
+// Table-driven DFA that classifies a lexeme in a single pass over its characters.
+// It accepts exactly the same languages as the token regular expressions:
+//   V  : V_[a-z]([a-z]|[0-9])*
+//   F  : F_[a-z]([a-z]|[0-9])*
+//   T  : "[A-Z][a-z]{1,7}"
+//   N  : -?[0-9]+(\.[0-9]+)?
+//   reserved_keyword : main|begin|end|if|then|else|halt|print|skip|input|output|return|num|text|void
+//                      |call|add|sub|mul|div|eq|grt|and|or|not|sqrt|=|<|(|)|{|}|,|;
+final class TokenDFA {
+
+    // Token class codes stored in the accept table
+    static final int REJECT = 0;
+    static final int VARIABLE = 1;
+    static final int FUNCTION = 2;
+    static final int TEXT = 3;
+    static final int NUMBER = 4;
+    static final int RESERVED_KEYWORD = 5;
+
+    private static final String[] CLASS_NAMES = {null, "V", "F", "T", "N", "reserved_keyword"};
+
+    static final String[] RESERVED_KEYWORDS = {
+        "main", "begin", "end", "if", "then", "else", "halt", "print", "skip", "input", "output",
+        "return", "num", "text", "void", "call", "add", "sub", "mul", "div", "eq", "grt", "and",
+        "or", "not", "sqrt", "=", "<", "(", ")", "{", "}", ",", ";"
+    };
+
+    // Only 7-bit ASCII can appear in a valid lexeme, anything else goes to the dead state
+    private static final int ALPHABET = 128;
+    private static final int DEAD = 0;
+    private static final int START = 1;
+    private static final int MAX_STATES = 256;
+
+    private static final short[] next = new short[MAX_STATES * ALPHABET];
+    private static final byte[] accept = new byte[MAX_STATES];
+    private static final String[] keywords = new String[MAX_STATES];
+    private static int stateCount = 2; // dead and start
+
+    static {
+        buildName('V', VARIABLE);
+        buildName('F', FUNCTION);
+        buildText();
+        buildNumber();
+        for (String keyword : RESERVED_KEYWORDS) {
+            int state = START;
+            for (int i = 0; i < keyword.length(); i++) {
+                int target = next[state * ALPHABET + keyword.charAt(i)];
+                if (target == DEAD) {
+                    target = newState();
+                    next[state * ALPHABET + keyword.charAt(i)] = (short) target;
+                }
+                state = target;
+            }
+            accept[state] = RESERVED_KEYWORD;
+            keywords[state] = keyword;
+        }
+    }
+
+    private TokenDFA() {
+    }
+
+    private static int newState() {
+        if (stateCount == MAX_STATES) {
+            throw new IllegalStateException("Token DFA exceeded " + MAX_STATES + " states");
+        }
+        return stateCount++;
+    }
+
+    private static void range(int from, char lo, char hi, int to) {
+        for (char c = lo; c <= hi; c++) {
+            next[from * ALPHABET + c] = (short) to;
+        }
+    }
+
+    // <prefix>_[a-z]([a-z]|[0-9])*
+    private static void buildName(char prefix, int tokenClass) {
+        int prefixState = newState();
+        int underscore = newState();
+        int body = newState();
+        range(START, prefix, prefix, prefixState);
+        range(prefixState, '_', '_', underscore);
+        range(underscore, 'a', 'z', body);
+        range(body, 'a', 'z', body);
+        range(body, '0', '9', body);
+        accept[body] = (byte) tokenClass;
+    }
+
+    // "[A-Z][a-z]{1,7}"
+    private static void buildText() {
+        int open = newState();
+        int capital = newState();
+        int close = newState();
+        range(START, '"', '"', open);
+        range(open, 'A', 'Z', capital);
+        int state = capital;
+        for (int i = 1; i <= 7; i++) {
+            int lower = newState();
+            range(state, 'a', 'z', lower);
+            range(lower, '"', '"', close);
+            state = lower;
+        }
+        accept[close] = TEXT;
+    }
+
+    // -?[0-9]+(\.[0-9]+)?
+    private static void buildNumber() {
+        int minus = newState();
+        int integer = newState();
+        int dot = newState();
+        int fraction = newState();
+        range(START, '-', '-', minus);
+        range(START, '0', '9', integer);
+        range(minus, '0', '9', integer);
+        range(integer, '0', '9', integer);
+        range(integer, '.', '.', dot);
+        range(dot, '0', '9', fraction);
+        range(fraction, '0', '9', fraction);
+        accept[integer] = NUMBER;
+        accept[fraction] = NUMBER;
+    }
+
+    // Classify a whole lexeme, returning one of the token class codes
+    static int classify(CharSequence word) {
+        int state = START;
+        for (int i = 0, n = word.length(); i < n && state != DEAD; i++) {
+            char c = word.charAt(i);
+            state = c < ALPHABET ? next[state * ALPHABET + c] : DEAD;
+        }
+        return accept[state];
+    }
+
+    // Run the DFA over the bytes [from, to) of a buffer without copying them, returning the final state
+    static int run(ByteBuffer buffer, int from, int to) {
+        int state = START;
+        for (int i = from; i < to && state != DEAD; i++) {
+            int c = buffer.get(i);
+            state = c >= 0 ? next[state * ALPHABET + c] : DEAD;
+        }
+        return state;
+    }
+
+    static int tokenClass(int state) {
+        return accept[state];
+    }
+
+    // Canonical String for a state that accepts a reserved keyword, null otherwise
+    static String keyword(int state) {
+        return keywords[state];
+    }
+
+    static String className(int tokenClass) {
+        return CLASS_NAMES[tokenClass];
+    }
+}
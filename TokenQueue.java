@@ -0,0 +1,109 @@
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded single-producer single-consumer queue that carries tokens from the lexer
+// thread to the parser thread. The producer only writes tail and the consumer only
+// writes head, so neither side takes a lock; each keeps a cached copy of the other's
+// counter and only rereads it when the queue looks full or empty. A side that has to
+// wait spins briefly and then parks for short intervals.
+final class TokenQueue implements RecSPLLexer.TokenSink {
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 10_000;
+
+    private final Token[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private long cachedHead; // producer's view of head
+    private long cachedTail; // consumer's view of tail
+
+    private volatile boolean closed;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+
+    // The capacity is rounded up to a power of two
+    TokenQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Token[size];
+        mask = size - 1;
+    }
+
+    // Producer: append a token, waiting while the queue is full
+    @Override
+    public void accept(Token token) {
+        long t = tail.get();
+        int spins = 0;
+        while (t - cachedHead >= slots.length) {
+            cachedHead = head.get();
+            if (t - cachedHead < slots.length) {
+                break;
+            }
+            if (cancelled) {
+                throw new CancellationException("Token queue cancelled by the consumer");
+            }
+            spins = backOff(spins);
+        }
+        slots[(int) t & mask] = token;
+        tail.lazySet(t + 1);
+    }
+
+    // Producer: no more tokens will be added
+    void close() {
+        closed = true;
+    }
+
+    // Producer: lexing failed, the consumer sees the error once it has taken every token before it
+    void fail(Throwable error) {
+        failure = error;
+        closed = true;
+    }
+
+    // Consumer: stop the producer, it gets a CancellationException on its next wait
+    void cancel() {
+        cancelled = true;
+    }
+
+    // Consumer: move every queued token into the list, waiting until at least one is
+    // available. Returns the number moved, 0 once the producer has closed the queue.
+    int drainTo(List<Token> into) {
+        long h = head.get();
+        int spins = 0;
+        while (h == cachedTail) {
+            cachedTail = tail.get();
+            if (h != cachedTail) {
+                break;
+            }
+            if (closed) {
+                // Tokens put before close() are visible once closed is
+                cachedTail = tail.get();
+                if (h != cachedTail) {
+                    break;
+                }
+                if (failure != null) {
+                    throw new RuntimeException(failure.getMessage(), failure);
+                }
+                return 0;
+            }
+            spins = backOff(spins);
+        }
+        int count = (int) (cachedTail - h);
+        for (long i = h; i < cachedTail; i++) {
+            int slot = (int) i & mask;
+            into.add(slots[slot]);
+            slots[slot] = null;
+        }
+        head.lazySet(cachedTail);
+        return count;
+    }
+
+    private static int backOff(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return spins + 1;
+    }
+}
@@ -0,0 +1,194 @@
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+// Reference interpreter that evaluates the program straight from the Node tree: every
+// step looks its children up by symbol, values are boxed, and each call allocates a frame
+// with a hash map of its variables. It is the specification BytecodeVM is checked and
+// measured against, not a fast path. Recursion in the program is recursion in Java.
+final class TreeInterpreter extends ProgramWalker {
+    // One activation of a function
+    private static final class Frame {
+        final Frame link;
+        final SemanticAnalyzer.Scope scope;
+        final Map<SemanticAnalyzer.Declaration, Object> values = new HashMap<>();
+
+        Frame(Frame link, SemanticAnalyzer.Scope scope) {
+            this.link = link;
+            this.scope = scope;
+        }
+    }
+
+    // DECL node of every function
+    private final Map<SemanticAnalyzer.Declaration, Node> functions = new HashMap<>();
+    private final Map<SemanticAnalyzer.Declaration, Object> globals = new HashMap<>();
+    private Frame frame;
+    private DoubleSupplier input;
+    private PrintStream out;
+    private boolean halted;
+    private boolean returned;
+    private Object result;
+
+    TreeInterpreter(SyntaxTree tree) {
+        super(tree);
+        List<String> errors = new SemanticAnalyzer(tree).analyze();
+        if (!errors.isEmpty()) {
+            throw new RuntimeException(errors.get(0) + (errors.size() > 1 ? " (and " + (errors.size() - 1) + " more)" : ""));
+        }
+    }
+
+    void run(DoubleSupplier input, PrintStream out) {
+        this.input = input;
+        this.out = out;
+        globals.clear();
+        frame = null;
+        halted = false;
+        Node prog = program();
+        findFunctions(child(prog, functionsId));
+        execute(child(prog, algoId));
+    }
+
+    private void findFunctions(Node list) {
+        for (; list != null; list = child(list, functionsId)) {
+            Node decl = child(list, declId);
+            if (decl != null) {
+                functions.put(tree.declaration(child(child(decl, headerId), fnameId).unid), decl);
+                findFunctions(child(child(child(decl, bodyId), subfuncsId), functionsId));
+            }
+        }
+    }
+
+    private void execute(Node algo) {
+        for (Node list = child(algo, instrucId); list != null && !halted && !returned; list = child(list, instrucId)) {
+            Node command = child(list, commandId);
+            if (command != null && !command.children.isEmpty()) {
+                executeCommand(command);
+            }
+        }
+    }
+
+    private void executeCommand(Node command) {
+        Node first = command.children.get(0);
+        if (first.isLeaf) {
+            if (first.symbolId == printId) {
+                Object value = evaluate(child(command, atomicId));
+                out.println(value instanceof Double ? BytecodeVM.formatNumber((Double) value) : value);
+            } else if (first.symbolId == returnId) {
+                result = evaluate(child(command, atomicId));
+                returned = true;
+            } else if (first.symbolId == haltId) {
+                halted = true;
+            }
+            return;
+        }
+        Node statement = content(first);
+        if (statement.symbolId == assignId) {
+            Node term = child(statement, termId);
+            Object value;
+            if (term == null) {
+                value = input.getAsDouble();
+            } else {
+                Node expression = firstChild(term);
+                value = expression.symbolId == callId ? call(expression) : evaluate(expression);
+            }
+            assign(tree.declaration(child(statement, vnameId).unid), value);
+        } else if (statement.symbolId == callId) {
+            call(statement);
+        } else if (statement.symbolId == branchId) {
+            boolean condition = (Boolean) evaluate(firstChild(child(statement, condId)));
+            execute(child(statement, algoId, condition ? 0 : 1));
+        }
+    }
+
+    private Object call(Node call) {
+        SemanticAnalyzer.Declaration function = tree.declaration(child(call, fnameId).unid);
+        Node decl = functions.get(function);
+        Node header = child(decl, headerId);
+        Object[] arguments = new Object[3];
+        for (int i = 0; i < 3; i++) {
+            arguments[i] = evaluate(child(call, atomicId, i));
+        }
+        Frame link = frame;
+        while (link != null && link.scope != function.scope) {
+            link = link.link;
+        }
+        SemanticAnalyzer.Declaration first = tree.declaration(child(header, vnameId).unid);
+        Frame caller = frame;
+        frame = new Frame(link, first.scope);
+        for (int i = 0; i < 3; i++) {
+            frame.values.put(tree.declaration(child(header, vnameId, i).unid), arguments[i]);
+        }
+        returned = false;
+        result = function.type == SemanticAnalyzer.NUM ? (Object) 0.0 : null;
+        execute(child(child(decl, bodyId), algoId));
+        returned = false;
+        frame = caller;
+        return result;
+    }
+
+    // Value of an ATOMIC, ARG, TERM operand or OP, SIMPLE or COMPOSIT operation: a Double,
+    // a String, or a Boolean for conditions
+    private Object evaluate(Node node) {
+        if (node.symbolId == atomicId) {
+            Node name = child(node, vnameId);
+            if (name != null) {
+                return value(tree.declaration(name.unid));
+            }
+            Node constant = leaf(child(node, constId));
+            return constant.symbolId == numberId ? (Object) Double.parseDouble(constant.token.word)
+                : BytecodeCompiler.unquote(constant.token.word);
+        }
+        if (node.symbolId == argId) {
+            return evaluate(firstChild(node));
+        }
+        int operator = operator(node).symbolId;
+        Object left = evaluate(operand(node, 0));
+        if (operator == notId) {
+            return !(Boolean) left;
+        }
+        if (operator == sqrtId) {
+            return Math.sqrt((Double) left);
+        }
+        Object right = evaluate(operand(node, 1));
+        if (operator == eqId) {
+            return left instanceof Double ? (Double) left == ((Double) right).doubleValue() : left.equals(right);
+        }
+        if (operator == orId) {
+            return (Boolean) left || (Boolean) right;
+        }
+        if (operator == andId) {
+            return (Boolean) left && (Boolean) right;
+        }
+        double a = (Double) left;
+        double b = (Double) right;
+        if (operator == grtId) {
+            return a > b;
+        }
+        return operator == addId ? a + b : operator == subId ? a - b : operator == mulId ? a * b : a / b;
+    }
+
+    private Map<SemanticAnalyzer.Declaration, Object> valuesOf(SemanticAnalyzer.Declaration variable) {
+        if (variable.scope.depth == 0) {
+            return globals;
+        }
+        Frame owner = frame;
+        while (owner.scope != variable.scope) {
+            owner = owner.link;
+        }
+        return owner.values;
+    }
+
+    private Object value(SemanticAnalyzer.Declaration variable) {
+        Object value = valuesOf(variable).get(variable);
+        if (value == null) {
+            return variable.type == SemanticAnalyzer.TEXT ? "" : (Object) 0.0;
+        }
+        return value;
+    }
+
+    private void assign(SemanticAnalyzer.Declaration variable, Object value) {
+        valuesOf(variable).put(variable, value);
+    }
+}
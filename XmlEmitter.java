@@ -0,0 +1,40 @@
+import java.io.IOException;
+import java.io.Writer;
+
+// Writes XML text straight to a Writer. Numbers are formatted into a reused
+// buffer so emitting a node does not create any intermediate Strings.
+final class XmlEmitter {
+    private final Writer out;
+    private final char[] digits = new char[11];
+
+    XmlEmitter(Writer out) {
+        this.out = out;
+    }
+
+    XmlEmitter text(String text) throws IOException {
+        out.write(text);
+        return this;
+    }
+
+    XmlEmitter number(int value) throws IOException {
+        long remaining = value;
+        boolean negative = remaining < 0;
+        if (negative) {
+            remaining = -remaining;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (negative) {
+            digits[--position] = '-';
+        }
+        out.write(digits, position, digits.length - position);
+        return this;
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,47 @@
+package recspl.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Grammar preparation, which only depends on the grammar and not on the input
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrammarBenchmark {
+    private Object grammar;
+
+    @Setup
+    public void setUp() throws Throwable {
+        grammar = RecSPL.grammarSnapshot();
+    }
+
+    @Benchmark
+    public Object computeFirstSets() throws Throwable {
+        return RecSPL.computeFirstSets(grammar);
+    }
+
+    // Compiling the grammar: its symbol table, productions, first sets and reachable terminals
+    @Benchmark
+    public Object newGrammarSnapshot() throws Throwable {
+        return RecSPL.newGrammarSnapshot();
+    }
+
+    // Building a parser, which takes the shared snapshot instead of compiling the grammar
+    @Benchmark
+    public Object newParser() throws Throwable {
+        return RecSPL.newParser(new ArrayList<>());
+    }
+}
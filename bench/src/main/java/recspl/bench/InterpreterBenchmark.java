@@ -0,0 +1,103 @@
+package recspl.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Running a parsed program: BytecodeVM against the TreeInterpreter it is checked against,
+// and the cost of compiling to bytecode. "fib" is call heavy (fib(20), about 22000 calls),
+// "sum" recurses 1000 deep and reaches a variable of the enclosing function on every level.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+    private static final String FIB = String.join("\n",
+        "main num V_n , num V_r , num V_t , begin",
+        "V_n = 20 ;",
+        "V_r = F_fib ( V_n , 0 , 0 ) ;",
+        "print V_r ;",
+        "end",
+        "num F_fib ( V_n , V_x , V_y ) { num V_a , num V_b , num V_c , begin",
+        "if grt ( 2 , V_n ) then begin return V_n ; end else begin skip ; end ;",
+        "V_a = sub ( V_n , 1 ) ;",
+        "V_b = F_fib ( V_a , 0 , 0 ) ;",
+        "V_a = sub ( V_n , 2 ) ;",
+        "V_c = F_fib ( V_a , 0 , 0 ) ;",
+        "V_a = add ( V_b , V_c ) ;",
+        "return V_a ;",
+        "end } end",
+        "");
+    private static final String SUM = String.join("\n",
+        "main num V_n , num V_r , num V_t , begin",
+        "V_n = 1000 ;",
+        "V_r = F_sum ( V_n , 0 , 0 ) ;",
+        "print V_r ;",
+        "end",
+        "num F_sum ( V_n , V_x , V_y ) { num V_a , num V_b , num V_c , begin",
+        "if grt ( 1 , V_n ) then begin return 0 ; end else begin skip ; end ;",
+        "V_a = sub ( V_n , 1 ) ;",
+        "V_b = F_sum ( V_a , 0 , 0 ) ;",
+        "V_c = F_add ( V_b , V_n , 0 ) ;",
+        "return V_c ;",
+        "end }",
+        "num F_add ( V_p , V_q , V_z ) { num V_k , num V_l , num V_m , begin",
+        "V_k = add ( V_p , V_q ) ;",
+        "V_a = V_k ;",
+        "return V_k ;",
+        "end } end end",
+        "");
+
+    // Neither program reads input
+    private static final DoubleSupplier NO_INPUT = () -> {
+        throw new IllegalStateException("unexpected input");
+    };
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    @Param({"fib", "sum"})
+    public String program;
+
+    private Object tree;
+    private Object vm;
+    private Object interpreter;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Path source = Programs.write(program.equals("fib") ? FIB : SUM);
+        Object parser = RecSPL.newParser(RecSPL.tokenize(source.toString()));
+        RecSPL.parsePredictive(parser);
+        tree = RecSPL.syntaxTree(parser);
+        vm = RecSPL.newVM(RecSPL.compileBytecode(tree));
+        interpreter = RecSPL.newInterpreter(tree);
+    }
+
+    @Benchmark
+    public void bytecodeVM() throws Throwable {
+        RecSPL.runVM(vm, NO_INPUT, DISCARD);
+    }
+
+    @Benchmark
+    public void treeInterpreter() throws Throwable {
+        RecSPL.runInterpreter(interpreter, NO_INPUT, DISCARD);
+    }
+
+    @Benchmark
+    public Object compileBytecode() throws Throwable {
+        return RecSPL.compileBytecode(tree);
+    }
+}
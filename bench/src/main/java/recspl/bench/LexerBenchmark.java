@@ -0,0 +1,71 @@
+package recspl.bench;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// RecSPLLexer: classifying single words, and lexing whole programs into TOKENSTREAM XML
+// or into a token list
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class LexerBenchmark {
+    @Param({"sample", "1000", "10000", "100000", "1000000"})
+    public String size;
+
+    private Path source;
+    private Path tokenFile;
+    private String[] words;
+
+    @Setup
+    public void setUp() throws Throwable {
+        String program = Programs.source(size);
+        source = Programs.write(program);
+        tokenFile = Programs.temporaryFile(".xml");
+        words = program.trim().split("\\s+");
+    }
+
+    // Every word of the program, so the score is per program like the other benchmarks
+    @Benchmark
+    public void identifyToken(Blackhole blackhole) throws Throwable {
+        for (int i = 0; i < words.length; i++) {
+            blackhole.consume(RecSPL.identifyToken(i + 1, words[i]));
+        }
+    }
+
+    @Benchmark
+    public void lex() throws Throwable {
+        RecSPL.lex(source.toString(), tokenFile.toString());
+    }
+
+    @Benchmark
+    public List<?> tokenize() throws Throwable {
+        return RecSPL.tokenize(source.toString());
+    }
+
+    @Benchmark
+    public List<?> tokenizeMapped() throws Throwable {
+        return RecSPL.tokenizeMapped(source.toString());
+    }
+
+    // Files under ParallelLexer.MIN_CHUNK_SIZE are lexed by a single task
+    @Benchmark
+    public List<?> tokenizeParallel() throws Throwable {
+        return RecSPL.tokenizeParallel(source.toString());
+    }
+}
@@ -0,0 +1,66 @@
+package recspl.bench;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// RecSPLParser: reading a TOKENSTREAM file and parsing a token list. The parser is built
+// once and reset for every parse, so the grammar set up is not part of the score.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ParserBenchmark {
+    @Param({"sample", "1000", "10000", "100000", "1000000"})
+    public String size;
+
+    private Path tokenFile;
+    private List<?> tokens;
+    private Object parser;
+
+    @Setup
+    public void setUp() throws Throwable {
+        Path source = Programs.write(Programs.source(size));
+        tokenFile = Programs.temporaryFile(".xml");
+        RecSPL.lex(source.toString(), tokenFile.toString());
+        tokens = RecSPL.tokenize(source.toString());
+        parser = RecSPL.newParser(tokens);
+    }
+
+    @Benchmark
+    public List<?> parseXMLFile() throws Throwable {
+        return RecSPL.parseXMLFile(tokenFile.toString());
+    }
+
+    @Benchmark
+    public Object parse() throws Throwable {
+        RecSPL.reset(parser, tokens);
+        RecSPL.parse(parser);
+        return RecSPL.syntaxTree(parser);
+    }
+
+    // The sample program is missing a ';' that only the legacy parser tolerates
+    @Benchmark
+    public Object parsePredictive() throws Throwable {
+        RecSPL.reset(parser, tokens);
+        try {
+            RecSPL.parsePredictive(parser);
+        } catch (RuntimeException e) {
+            return e;
+        }
+        return RecSPL.syntaxTree(parser);
+    }
+}
@@ -0,0 +1,89 @@
+package recspl.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Benchmark inputs: "sample" is the input.txt shipped with the compiler, a number asks for
+// a generated program of about that many tokens. Generated programs mix assignments,
+// calls, prints and branches in main and in a list of functions, and parse with both the
+// legacy and the predictive parser.
+final class Programs {
+    private static final String[] STATEMENTS = {
+        "V_a = add ( V_a , 1 ) ;",
+        "print V_a ;",
+        "if grt ( V_a , 10 ) then begin V_b = sub ( V_a , 10 ) ; end else begin skip ; end ;",
+        "V_c = \"Hello\" ;",
+        "V_b = F_f ( V_a , 2 , V_b ) ;",
+        "if eq ( V_a , V_b ) then begin print V_c ; halt ; end else begin V_a = mul ( V_b , 3 ) ; end ;",
+    };
+    // Statements in the body of each generated function
+    private static final int FUNCTION_STATEMENTS = 50;
+
+    private Programs() {
+    }
+
+    static String source(String size) throws IOException {
+        if (size.equals("sample")) {
+            try (InputStream in = Programs.class.getResourceAsStream("/input.txt")) {
+                if (in == null) {
+                    throw new IOException("input.txt is missing from the benchmark jar");
+                }
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        return generate(Integer.parseInt(size));
+    }
+
+    // Write a program to a temporary file that is deleted when the JVM exits
+    static Path write(String source) throws IOException {
+        Path file = Files.createTempFile("recspl-bench", ".txt");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, source, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    static Path temporaryFile(String suffix) throws IOException {
+        Path file = Files.createTempFile("recspl-bench", suffix);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    // A program of about tokens tokens, two thirds in main and the rest in functions
+    static String generate(int tokens) {
+        StringBuilder program = new StringBuilder(tokens * 5);
+        program.append("main num V_a , num V_b , text V_c , begin\n");
+        int count = 10;
+        int statement = 0;
+        while (count < tokens * 2 / 3) {
+            count += append(program, statement++);
+        }
+        program.append("end\n");
+        count++;
+        int function = 0;
+        while (count < tokens) {
+            program.append("num F_f").append(function++)
+                .append(" ( V_p , V_q , V_r ) { num V_a , num V_b , text V_c , begin\n");
+            count += 20;
+            for (int i = 0; i < FUNCTION_STATEMENTS && count < tokens; i++) {
+                count += append(program, statement++);
+            }
+            program.append("return V_a ; end } end\n");
+        }
+        return program.toString();
+    }
+
+    private static int append(StringBuilder program, int statement) {
+        String text = STATEMENTS[statement % STATEMENTS.length];
+        program.append(text).append('\n');
+        int tokens = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == ' ') {
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+}
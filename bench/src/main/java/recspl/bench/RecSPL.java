@@ -0,0 +1,219 @@
+package recspl.bench;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+// The compiler is in the default package, which JMH benchmarks (they must be in a named
+// package) cannot refer to. Its entry points are reached through method handles held in
+// static finals instead, which the JIT treats as constants and inlines like direct calls.
+// Compiler objects (Token, RecSPLParser, the syntax trees) are passed around as Object.
+final class RecSPL {
+    private static final MethodHandle IDENTIFY_TOKEN;
+    private static final MethodHandle LEX;
+    private static final MethodHandle TOKENIZE;
+    private static final MethodHandle TOKENIZE_MAPPED;
+    private static final MethodHandle TOKENIZE_PARALLEL;
+    private static final MethodHandle PARSE_XML_FILE;
+    private static final MethodHandle NEW_PARSER;
+    private static final MethodHandle RESET;
+    private static final MethodHandle PARSE;
+    private static final MethodHandle PARSE_PREDICTIVE;
+    private static final MethodHandle GRAMMAR_SNAPSHOT;
+    private static final MethodHandle GRAMMAR_RULES;
+    private static final MethodHandle NEW_GRAMMAR_SNAPSHOT;
+    private static final MethodHandle COMPUTE_FIRST_SETS;
+    private static final MethodHandle SYNTAX_TREE;
+    private static final MethodHandle TO_XML;
+    private static final MethodHandle REMOVE_NODE;
+    private static final MethodHandle FOR_EACH_NODE;
+    private static final Class<?> NODE_VISITOR;
+    private static final MethodHandle COMPILE_BYTECODE;
+    private static final MethodHandle NEW_VM;
+    private static final MethodHandle RUN_VM;
+    private static final MethodHandle NEW_INTERPRETER;
+    private static final MethodHandle RUN_INTERPRETER;
+
+    static {
+        try {
+            Class<?> token = Class.forName("Token");
+            Class<?> lexer = Class.forName("RecSPLLexer");
+            Class<?> parser = Class.forName("RecSPLParser");
+            Class<?> tree = Class.forName("SyntaxTreeBackend");
+            NODE_VISITOR = Class.forName("SyntaxTreeBackend$NodeVisitor");
+            MethodHandles.Lookup lexerLookup = MethodHandles.privateLookupIn(lexer, MethodHandles.lookup());
+            MethodHandles.Lookup parserLookup = MethodHandles.privateLookupIn(parser, MethodHandles.lookup());
+            MethodHandles.Lookup treeLookup = MethodHandles.privateLookupIn(tree, MethodHandles.lookup());
+
+            IDENTIFY_TOKEN = lexerLookup.findStatic(lexer, "identifyToken", MethodType.methodType(token, int.class, String.class))
+                .asType(MethodType.methodType(Object.class, int.class, String.class));
+            LEX = lexerLookup.findStatic(lexer, "lex", MethodType.methodType(void.class, String.class, String.class));
+            TOKENIZE = lexerLookup.findStatic(lexer, "tokenize", MethodType.methodType(List.class, String.class));
+            TOKENIZE_MAPPED = lexerLookup.findStatic(lexer, "tokenizeMapped", MethodType.methodType(List.class, String.class));
+            TOKENIZE_PARALLEL = lexerLookup.findStatic(lexer, "tokenizeParallel", MethodType.methodType(List.class, String.class));
+            PARSE_XML_FILE = parserLookup.findStatic(parser, "parseXMLFile", MethodType.methodType(List.class, String.class));
+            NEW_PARSER = parserLookup.findConstructor(parser, MethodType.methodType(void.class, List.class))
+                .asType(MethodType.methodType(Object.class, List.class));
+            RESET = parserLookup.findVirtual(parser, "reset", MethodType.methodType(void.class, List.class))
+                .asType(MethodType.methodType(void.class, Object.class, List.class));
+            PARSE = parserLookup.findVirtual(parser, "parse", MethodType.methodType(void.class))
+                .asType(MethodType.methodType(void.class, Object.class));
+            PARSE_PREDICTIVE = parserLookup.findVirtual(parser, "parsePredictive", MethodType.methodType(void.class))
+                .asType(MethodType.methodType(void.class, Object.class));
+            Class<?> snapshot = Class.forName("GrammarSnapshot");
+            MethodHandles.Lookup snapshotLookup = MethodHandles.privateLookupIn(snapshot, MethodHandles.lookup());
+            GRAMMAR_SNAPSHOT = snapshotLookup.findStatic(snapshot, "recspl", MethodType.methodType(snapshot))
+                .asType(MethodType.methodType(Object.class));
+            GRAMMAR_RULES = parserLookup.findStatic(parser, "grammarRules", MethodType.methodType(Map.class));
+            NEW_GRAMMAR_SNAPSHOT = snapshotLookup.findConstructor(snapshot, MethodType.methodType(void.class, Map.class, String.class))
+                .asType(MethodType.methodType(Object.class, Map.class, String.class));
+            COMPUTE_FIRST_SETS = snapshotLookup.findVirtual(snapshot, "computeFirstSets", MethodType.methodType(BitSet[].class))
+                .asType(MethodType.methodType(Object.class, Object.class));
+            SYNTAX_TREE = parserLookup.findGetter(parser, "syntaxTree", tree)
+                .asType(MethodType.methodType(Object.class, Object.class));
+            TO_XML = treeLookup.findVirtual(tree, "toXML", MethodType.methodType(String.class))
+                .asType(MethodType.methodType(String.class, Object.class));
+            REMOVE_NODE = treeLookup.findVirtual(tree, "removeNode", MethodType.methodType(void.class, int.class))
+                .asType(MethodType.methodType(void.class, Object.class, int.class));
+            FOR_EACH_NODE = treeLookup.findVirtual(tree, "forEachNode", MethodType.methodType(void.class, NODE_VISITOR))
+                .asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+            Class<?> nodeTree = Class.forName("SyntaxTree");
+            Class<?> bytecode = Class.forName("Bytecode");
+            Class<?> compiler = Class.forName("BytecodeCompiler");
+            Class<?> vm = Class.forName("BytecodeVM");
+            Class<?> interpreter = Class.forName("TreeInterpreter");
+            MethodType run = MethodType.methodType(void.class, DoubleSupplier.class, PrintStream.class);
+            MethodType runObject = MethodType.methodType(void.class, Object.class, DoubleSupplier.class, PrintStream.class);
+            COMPILE_BYTECODE = MethodHandles.privateLookupIn(compiler, MethodHandles.lookup())
+                .findStatic(compiler, "compile", MethodType.methodType(bytecode, nodeTree))
+                .asType(MethodType.methodType(Object.class, Object.class));
+            MethodHandles.Lookup vmLookup = MethodHandles.privateLookupIn(vm, MethodHandles.lookup());
+            NEW_VM = vmLookup.findConstructor(vm, MethodType.methodType(void.class, bytecode))
+                .asType(MethodType.methodType(Object.class, Object.class));
+            RUN_VM = vmLookup.findVirtual(vm, "run", run).asType(runObject);
+            MethodHandles.Lookup interpreterLookup = MethodHandles.privateLookupIn(interpreter, MethodHandles.lookup());
+            NEW_INTERPRETER = interpreterLookup.findConstructor(interpreter, MethodType.methodType(void.class, nodeTree))
+                .asType(MethodType.methodType(Object.class, Object.class));
+            RUN_INTERPRETER = interpreterLookup.findVirtual(interpreter, "run", run).asType(runObject);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private RecSPL() {
+    }
+
+    static Object identifyToken(int tokenId, String word) throws Throwable {
+        return (Object) IDENTIFY_TOKEN.invokeExact(tokenId, word);
+    }
+
+    static void lex(String inputFile, String outputFile) throws Throwable {
+        LEX.invokeExact(inputFile, outputFile);
+    }
+
+    static List<?> tokenize(String inputFile) throws Throwable {
+        return (List<?>) TOKENIZE.invokeExact(inputFile);
+    }
+
+    static List<?> tokenizeMapped(String inputFile) throws Throwable {
+        return (List<?>) TOKENIZE_MAPPED.invokeExact(inputFile);
+    }
+
+    // tokenizeMapped on chunks of the file in parallel, on the common fork/join pool
+    static List<?> tokenizeParallel(String inputFile) throws Throwable {
+        return (List<?>) TOKENIZE_PARALLEL.invokeExact(inputFile);
+    }
+
+    static List<?> parseXMLFile(String tokenFile) throws Throwable {
+        return (List<?>) PARSE_XML_FILE.invokeExact(tokenFile);
+    }
+
+    static Object newParser(List<?> tokens) throws Throwable {
+        return (Object) NEW_PARSER.invokeExact(tokens);
+    }
+
+    static void reset(Object parser, List<?> tokens) throws Throwable {
+        RESET.invokeExact(parser, tokens);
+    }
+
+    static void parse(Object parser) throws Throwable {
+        PARSE.invokeExact(parser);
+    }
+
+    static void parsePredictive(Object parser) throws Throwable {
+        PARSE_PREDICTIVE.invokeExact(parser);
+    }
+
+    // The grammar snapshot all parsers share
+    static Object grammarSnapshot() throws Throwable {
+        return (Object) GRAMMAR_SNAPSHOT.invokeExact();
+    }
+
+    // A new snapshot of the RecSPL grammar, the work the shared one saves every parser
+    static Object newGrammarSnapshot() throws Throwable {
+        return (Object) NEW_GRAMMAR_SNAPSHOT.invokeExact((Map<?, ?>) GRAMMAR_RULES.invokeExact(), "PROG");
+    }
+
+    static Object computeFirstSets(Object grammar) throws Throwable {
+        return (Object) COMPUTE_FIRST_SETS.invokeExact(grammar);
+    }
+
+    static Object syntaxTree(Object parser) throws Throwable {
+        return (Object) SYNTAX_TREE.invokeExact(parser);
+    }
+
+    static String toXML(Object tree) throws Throwable {
+        return (String) TO_XML.invokeExact(tree);
+    }
+
+    static void removeNode(Object tree, int unid) throws Throwable {
+        REMOVE_NODE.invokeExact(tree, unid);
+    }
+
+    // UNIDs of the live leaves of a tree, in the order the tree writes them
+    static int[] leafIds(Object tree) throws Throwable {
+        List<Integer> leaves = new ArrayList<>();
+        Object visitor = Proxy.newProxyInstance(NODE_VISITOR.getClassLoader(), new Class<?>[] {NODE_VISITOR},
+            (proxy, method, args) -> {
+                if (method.getName().equals("visit") && (Boolean) args[2]) {
+                    leaves.add((Integer) args[0]);
+                }
+                return null;
+            });
+        FOR_EACH_NODE.invokeExact(tree, visitor);
+        int[] ids = new int[leaves.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = leaves.get(i);
+        }
+        return ids;
+    }
+
+    // The program of a Node based syntax tree, analyzed and compiled to Bytecode
+    static Object compileBytecode(Object tree) throws Throwable {
+        return (Object) COMPILE_BYTECODE.invokeExact(tree);
+    }
+
+    static Object newVM(Object bytecode) throws Throwable {
+        return (Object) NEW_VM.invokeExact(bytecode);
+    }
+
+    static void runVM(Object vm, DoubleSupplier input, PrintStream out) throws Throwable {
+        RUN_VM.invokeExact(vm, input, out);
+    }
+
+    static Object newInterpreter(Object tree) throws Throwable {
+        return (Object) NEW_INTERPRETER.invokeExact(tree);
+    }
+
+    static void runInterpreter(Object interpreter, DoubleSupplier input, PrintStream out) throws Throwable {
+        RUN_INTERPRETER.invokeExact(interpreter, input, out);
+    }
+}
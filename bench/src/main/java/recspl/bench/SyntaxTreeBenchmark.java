@@ -0,0 +1,69 @@
+package recspl.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// SyntaxTree: serializing the tree the legacy parser builds and removing nodes from it
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SyntaxTreeBenchmark {
+    @Param({"sample", "1000", "10000", "100000", "1000000"})
+    public String size;
+
+    private List<?> tokens;
+    private Object parser;
+    private Object tree;
+
+    @Setup
+    public void setUp() throws Throwable {
+        tokens = RecSPL.tokenize(Programs.write(Programs.source(size)).toString());
+        parser = RecSPL.newParser(tokens);
+        RecSPL.parse(parser);
+        tree = RecSPL.syntaxTree(parser);
+    }
+
+    @Benchmark
+    public String toXML() throws Throwable {
+        return RecSPL.toXML(tree);
+    }
+
+    // Every removal needs a tree of its own, built outside the measurement
+    @State(Scope.Thread)
+    public static class FreshTree {
+        Object tree;
+        int[] leaves;
+
+        @Setup(Level.Invocation)
+        public void setUp(SyntaxTreeBenchmark benchmark) throws Throwable {
+            RecSPL.reset(benchmark.parser, benchmark.tokens);
+            RecSPL.parse(benchmark.parser);
+            tree = RecSPL.syntaxTree(benchmark.parser);
+            leaves = RecSPL.leafIds(tree);
+        }
+    }
+
+    // Remove every leaf, which goes through the tombstones and list compaction
+    @Benchmark
+    public Object removeNode(FreshTree fresh) throws Throwable {
+        for (int leaf : fresh.leaves) {
+            RecSPL.removeNode(fresh.tree, leaf);
+        }
+        return fresh.tree;
+    }
+}